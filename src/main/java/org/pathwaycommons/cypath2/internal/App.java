@@ -16,15 +16,21 @@ import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 /**
  * App: cPath2/PC Web Service client integrated
@@ -32,11 +38,19 @@ import java.util.concurrent.Executors;
  */
 final class App extends AbstractWebServiceGUIClient implements NetworkImportWebServiceClient, SearchWebServiceClient {
   static final String PROP_CPATH2_SERVER_URL = "cypath2.server.url";
-  static final Map<String, String> uriToOrganismNameMap = new HashMap<String, String>();
-  static final Map<String, String> uriToDatasourceNameMap = new HashMap<String, String>();
-  static final ExecutorService cachedThreadPool = Executors.newCachedThreadPool();
+  static final String PROP_QUERY_CACHE_TTL = "cypath2.cache.ttl.hours";
+  static final String PROP_QUERY_CACHE_SIZE = "cypath2.cache.size.mb";
+  static final String PROP_MODEL_SNAPSHOTS_SIZE = "cypath2.snapshots.size.mb";
+  static final String PROP_VIRTUAL_THREADS = "cypath2.virtual.threads";
+  static final String PROP_DETAILS_CACHE_SIZE = "cypath2.details.cache.entries";
+  static final String PROP_DETAILS_CACHE_PERSIST = "cypath2.details.cache.persist";
   private static final Logger LOGGER = LoggerFactory.getLogger(App.class);
   static CPathClient client; // shared stateless cPath2 client
+  static volatile Metadata metadata = Metadata.EMPTY; // datasource/organism names (replaced when refreshed)
+  static File metadataFile; // local copy of the metadata (null - not saved)
+  static QueryCache queryCache; // get/graph query results cache (null when disabled)
+  static ModelSnapshots modelSnapshots; // parsed BioPAX models cache (null when disabled)
+  static DetailsCache detailsCache; // search hits details cache (null when disabled)
   static Blacklist blacklist; // for the SIF converter, to avoid ubiquitous small molecules
   static CyServices cyServices; //Cy3 services
   static AppOptions options = new AppOptions(); //global query options/filters
@@ -46,6 +60,9 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
   final JTextField searchField;
   final JComboBox bpTypeComboBox;
   private final String SEARCH_FIELD_TIP_TEXT = "a keyword (e.g., gene name or identifier)";
+  // search as you type: the pause (ms) and min. keyword length
+  private static final int SEARCH_DELAY_MS = 500;
+  private static final int MIN_SEARCH_LENGTH = 3;
 
   /**
    * Constructor.
@@ -121,30 +138,44 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
 
     blacklist = new Blacklist(getClass().getResourceAsStream("/blacklist.txt"));
 
-    // init datasources and organisms maps (in a separate thread)
-    cachedThreadPool.execute(new Runnable() {
+    // use the datasources and organisms saved last time, if any, and get the current ones later
+    final Metadata saved = Metadata.load(metadataFile, client.getEndPointURL());
+    if (saved != null) {
+      metadata = saved;
+      if (detailsCache != null)
+        detailsCache.setDatasourcesFingerprint(saved.datasourcesFingerprint);
+    }
+
+    // create the UI
+    final JTabbedPane tabbedPane = new JTabbedPane();
+    tabbedPane.add("Find and Get", createSearchQueryPanel());
+    tabbedPane.add("Graph Queries", new QueryPanel(advQueryPanelItemsList));
+    gui.setPreferredSize(new Dimension(800, 600));
+    gui.setLayout(new BorderLayout());
+    gui.add(tabbedPane, BorderLayout.CENTER);
+
+    // refresh the datasources and organisms (in a separate thread)
+    AppExecutors.execute(AppExecutors.Lane.BACKGROUND, AppExecutors.HIGH, new Runnable() {
       @Override
       public void run() {
+        final Metadata fresh;
         try {
-          SearchResponse res = client.createSearchQuery()
-            .typeFilter("Provenance")
-            .allPages() //sets .queryString("*") automatically
-            .result();
-          for (SearchHit bs : res.getSearchHit()) {
-            uriToDatasourceNameMap.put(bs.getUri(), bs.getName());
-          }
-          uriToOrganismNameMap.put("http://identifiers.org/taxonomy/9606", "Homo sapiens");
+          fresh = Metadata.fetch();
         } catch (CPathException e) {
-          throw new RuntimeException(e);
+          LOGGER.warn("Failed to get the datasources from the server (using the saved ones): " + e);
+          return;
+        }
+        final boolean changed = !fresh.datasourcesFingerprint.equals(metadata.datasourcesFingerprint)
+          || !fresh.uriToDatasourceNameMap.equals(metadata.uriToDatasourceNameMap);
+        metadata = fresh; //swap
+        // (the fingerprint does not change when a release only updates the data of the same datasources)
+        if (detailsCache != null)
+          detailsCache.setDatasourcesFingerprint(fresh.datasourcesFingerprint);
+        if (changed) {
+          if (metadataFile != null)
+            fresh.save(metadataFile);
+          SwingUtilities.invokeLater(() -> setDatasourceListModel());
         }
-
-        // create the UI
-        final JTabbedPane tabbedPane = new JTabbedPane();
-        tabbedPane.add("Find and Get", createSearchQueryPanel());
-        tabbedPane.add("Graph Queries", new QueryPanel(advQueryPanelItemsList));
-        gui.setPreferredSize(new Dimension(800, 600));
-        gui.setLayout(new BorderLayout());
-        gui.add(tabbedPane, BorderLayout.CENTER);
       }
     });
   }
@@ -163,26 +194,55 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
     final String[] ids = ((String) query).split("\\s+");
 
     return new TaskIterator(new NetworkAndViewTask(
-      client.createGraphQuery()
-        .kind(GraphType.NEIGHBORHOOD)
-        .direction(CPathClient.Direction.UNDIRECTED)
-        .sources(ids)
-        .organismFilter(options.selectedOrganisms())
-        .datasourceFilter(options.selectedDatasources())
+      CachedQuery.graph(GraphType.NEIGHBORHOOD, Arrays.asList(ids), null,
+        CPathClient.Direction.UNDIRECTED, null,
+        options.selectedDatasources(), options.selectedOrganisms())
       , null));
   }
 
   /*
-   * Global options panel (search/graph query filters).
+   * Loads and shows another page of the current search result.
    */
-  private JComponent createOptionsPane() {
-    // create the filter-list of the data sources available on the PC server
+  private void showPage(final HitsModel hitsModel, final int pageNo, final Runnable showNumHits) {
+    final SearchPages pages = hitsModel.getPages();
+    if (pages == null || pageNo < 0 || pageNo >= pages.numPages())
+      return;
+    AppExecutors.execute(AppExecutors.Lane.INTERACTIVE, AppExecutors.HIGH, () -> {
+      try {
+        hitsModel.update(pages, pages.get(pageNo));
+        showNumHits.run();
+      } catch (CPathException e) {
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(gui, "Failed to get the page (try again)"));
+      } catch (CancellationException e) {
+        // a new search has started
+      }
+    });
+  }
+
+  /*
+   * (Re-)creates the datasources filter-list items (keeps the selected ones).
+   */
+  private static void setDatasourceListModel() {
+    final Set<String> selected = options.selectedDatasources();
+    final Map<String, String> uriToDatasourceNameMap = metadata.uriToDatasourceNameMap;
     DefaultListModel dataSourceBoxModel = new DefaultListModel();
     for (String uri : uriToDatasourceNameMap.keySet()) {
       String name = uriToDatasourceNameMap.get(uri);
       dataSourceBoxModel.addElement(new NvpListItem(name, name));
     }
     options.dataSourceList.setModel(dataSourceBoxModel);
+    for (int i = 0; i < dataSourceBoxModel.size(); i++) {
+      if (selected.contains(((NvpListItem) dataSourceBoxModel.get(i)).getValue()))
+        options.dataSourceList.addSelectionInterval(i, i);
+    }
+  }
+
+  /*
+   * Global options panel (search/graph query filters).
+   */
+  private JComponent createOptionsPane() {
+    // create the filter-list of the data sources available on the PC server
+    setDatasourceListModel();
     JScrollPane dataSourceFilterBox = new JScrollPane(options.dataSourceList,
       JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
     dataSourceFilterBox.setBorder(new TitledBorder("Datasources:"));
@@ -260,99 +320,169 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
     // create the search hits model
     final HitsModel hitsModel = new HitsModel("Search Hits", cyServices.taskManager);
     // search hits list
-    final JList resList = new ToolTipsSearchHitsJList();
+    final ToolTipsSearchHitsJList resList = new ToolTipsSearchHitsJList();
     // register the JList as model's observer
     hitsModel.addObserver((Observer) resList);
 
     final JScrollPane hitListScrollPane = new JScrollPane(resList);
     hitListScrollPane.setBorder(createTitledBorder("Result"));
 
+    // result pages navigation
+    final JButton prevButton = new JButton("< Prev");
+    prevButton.setToolTipText("Previous page of hits");
+    prevButton.setEnabled(false);
+    final JButton nextButton = new JButton("Next >");
+    nextButton.setToolTipText("Next page of hits (or scroll down the list)");
+    nextButton.setEnabled(false);
+    final Runnable showNumHits = () -> SwingUtilities.invokeLater(() -> {
+      info.setText(hitsModel.getNumHitsMessage());
+      prevButton.setEnabled(hitsModel.hasPrevPage());
+      nextButton.setEnabled(hitsModel.hasNextPage());
+    });
+    prevButton.addActionListener(e -> showPage(hitsModel, hitsModel.getFirstPage() - 1, showNumHits));
+    nextButton.addActionListener(e -> showPage(hitsModel, hitsModel.getLastPage() + 1, showNumHits));
+    // append the next page when scrolled to the end
+    final AtomicBoolean loadingMore = new AtomicBoolean();
+    resList.setInfiniteScroll(hitListScrollPane, () -> {
+      final SearchPages pages = hitsModel.getPages();
+      final int next = hitsModel.getLastPage() + 1;
+      if (!hitsModel.hasNextPage() || !loadingMore.compareAndSet(false, true))
+        return;
+      AppExecutors.execute(AppExecutors.Lane.INTERACTIVE, AppExecutors.NORMAL, () -> {
+        try {
+          hitsModel.append(pages, pages.get(next));
+          showNumHits.run();
+        } catch (CPathException e) {
+          LOGGER.warn("Failed to load the search result page " + next + ": " + e);
+        } catch (CancellationException e) {
+          // a new search has started
+        } finally {
+          loadingMore.set(false);
+        }
+      }, () -> loadingMore.set(false));
+    });
+
     //init combo-box (BioPAX type filter)
     bpTypeComboBox.setSelectedIndex(0); //default value: Top Pathways
     bpTypeComboBox.setEditable(false);
 
+    // Create the search button action
+    // runs a search; the latest one wins (superseded searches are cancelled, their results dropped;
+    // the shown result is cancelled only when a newer one replaces it, so its pages stay usable till then)
+    final AtomicLong searchCount = new AtomicLong();
+    final AtomicReference<SearchPages> currentSearch = new AtomicReference<SearchPages>();
+    final BiConsumer<String, Boolean> search = (keyword, typed) -> {
+      final int selIndex = bpTypeComboBox.getSelectedIndex();
+      final NvpListItem selItem = (NvpListItem) bpTypeComboBox.getItemAt(selIndex);
+      // search query for top pathways (the first combo-box item) or other, with filters
+      final SearchPages pages = new SearchPages(keyword, (selIndex == 0) ? "" : selItem.getValue(),
+        options.selectedDatasources(), options.selectedOrganisms());
+      final long searchNo;
+      synchronized (searchCount) {
+        searchNo = searchCount.incrementAndGet();
+        final SearchPages previous = currentSearch.getAndSet(pages);
+        if (previous != null && previous != hitsModel.getPages())
+          previous.cancel(); //not shown yet
+      }
+      searchButton.setEnabled(false);
+      info.setText("");
+      // after the search (also when it's dropped by the executor)
+      final Runnable done = () -> SwingUtilities.invokeLater(() -> {
+        searchButton.setEnabled(true);
+        gui.repaint();
+        if (!typed)
+          ((Window) searchButton.getRootPane().getParent()).toFront();
+      });
+      AppExecutors.execute(AppExecutors.Lane.INTERACTIVE, AppExecutors.HIGH, () -> {
+        try {
+          LOGGER.info("Executing search for " + keyword);
+          final SearchResponse searchResponse = pages.get(0);
+
+          synchronized (searchCount) {
+            if (searchNo != searchCount.get())
+              return; //a newer search has started
+            // update hits model (make summaries, notify observers!)
+            final SearchPages shown = hitsModel.getPages();
+            hitsModel.searchFor = selItem.getValue();
+            hitsModel.update(pages, searchResponse);
+            if (shown != null && shown != pages)
+              shown.cancel(); //replaced
+          }
+          showNumHits.run();
+
+          //set the title for the results list pane
+          if (hitsModel.searchFor.equalsIgnoreCase("EntityReference")) {
+            hitListScrollPane.setBorder(createTitledBorder(
+              "Matching participants (double-click to add to Graph Queries)"));
+          } else if (hitsModel.searchFor.isEmpty()) {
+            hitListScrollPane.setBorder(createTitledBorder(
+              "Matching top (root) pathways"));
+          } else {
+            hitListScrollPane.setBorder(createTitledBorder(
+              "Matching " + hitsModel.searchFor.toLowerCase() + "s"));
+          }
+        } catch (CancellationException e) {
+          LOGGER.debug("Cancelled the search for " + keyword);
+        } catch (Throwable e) {
+          // can fail due to a proxy returned wrong response (500 instead of PC's 460)
+          // (using Throwable helps catch unresolved transitive dependency, etc., exceptions)
+          if (e instanceof CPathException) {
+            SwingUtilities.invokeLater(new Runnable() {
+              @Override
+              public void run() {
+                if (searchNo != searchCount.get())
+                  return;
+                if (typed)
+                  info.setText("No results for " + keyword);
+                else
+                  JOptionPane.showMessageDialog(gui, "No results (try again)");
+              }
+            });
+          } else {
+            throw new RuntimeException("Search action failed; ", e);
+          }
+        } finally {
+          done.run();
+        }
+      }, done);
+    };
+
     // Create the search button action
     searchButton.addActionListener(new ActionListener() {
       public void actionPerformed(ActionEvent actionEvent) {
-        searchButton.setEnabled(false);
-        final int selIndex = bpTypeComboBox.getSelectedIndex();
-        final NvpListItem selItem = (NvpListItem) bpTypeComboBox.getItemAt(selIndex);
-        hitsModel.searchFor = selItem.getValue();
         final String keyword = searchField.getText();
         if (keyword == null || keyword.trim().length() == 0 || keyword.startsWith(SEARCH_FIELD_TIP_TEXT)) {
           JOptionPane.showMessageDialog(gui, "Type something in the search box.");
-          searchButton.setEnabled(true);
         } else {
-          info.setText("");
-          cachedThreadPool.execute(() -> {
-            SearchResponse searchResponse = null;
-            try {
-              LOGGER.info("Executing search for " + keyword);
-              searchResponse = (selIndex == 0)
-                ? client.createTopPathwaysQuery() //search query for top pathways, with filters
-                .datasourceFilter(options.selectedDatasources())
-                .organismFilter(options.selectedOrganisms())
-                .queryString(keyword)
-                .result()
-                : client.createSearchQuery() //other search query with filters
-                .typeFilter(hitsModel.searchFor)
-                .datasourceFilter(options.selectedDatasources())
-                .organismFilter(options.selectedOrganisms())
-                .queryString(keyword)
-                .result();
-
-              // update hits model (make summaries, notify observers!)
-              hitsModel.update(searchResponse);
-              String numHitsMsg = "Total hits:  " + searchResponse.getNumHits();
-              int n = searchResponse.getSearchHit().size();
-              if (searchResponse.getNumHits() > n) {
-                //TODO: pagination - 'prev','next' buttons; store current pageNo in hitsModel)
-                int p = searchResponse.getPageNo();
-                int npp = searchResponse.getMaxHitsPerPage();
-                numHitsMsg += String.format(" (top %d..%d are shown)", p * npp, p * npp + n);
-              }
-              info.setText(numHitsMsg);
-
-              //set the title for the results list pane
-              if (hitsModel.searchFor.equalsIgnoreCase("EntityReference")) {
-                hitListScrollPane.setBorder(createTitledBorder(
-                  "Matching participants (double-click to add to Graph Queries)"));
-              } else if (hitsModel.searchFor.isEmpty()) {
-                hitListScrollPane.setBorder(createTitledBorder(
-                  "Matching top (root) pathways"));
-              } else {
-                hitListScrollPane.setBorder(createTitledBorder(
-                  "Matching " + hitsModel.searchFor.toLowerCase() + "s"));
-              }
-            } catch (Throwable e) {
-              // can fail due to a proxy returned wrong response (500 instead of PC's 460)
-              // (using Throwable helps catch unresolved transitive dependency, etc., exceptions)
-              if (e instanceof CPathException) {
-                SwingUtilities.invokeLater(new Runnable() {
-                  @Override
-                  public void run() {
-                    JOptionPane.showMessageDialog(gui, "No results (try again)");
-                  }
-                });
-              } else {
-//									LOGGER.error("Search action failed; ", e);
-                throw new RuntimeException("Search action failed; ", e);
-              }
-            } finally {
-              SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                  searchButton.setEnabled(true);
-                  gui.repaint();
-                  ((Window) searchButton.getRootPane().getParent()).toFront();
-                }
-              });
-            }
-          });
+          search.accept(keyword, false);
         }
       }
     });
 
+    // search as you type (after a pause)
+    final javax.swing.Timer typingTimer = new javax.swing.Timer(SEARCH_DELAY_MS, e -> {
+      final String keyword = searchField.getText().trim();
+      final SearchPages current = currentSearch.get();
+      final int selIndex = bpTypeComboBox.getSelectedIndex();
+      final String type = (selIndex == 0) ? "" : ((NvpListItem) bpTypeComboBox.getItemAt(selIndex)).getValue();
+      if (keyword.length() >= MIN_SEARCH_LENGTH && !keyword.startsWith(SEARCH_FIELD_TIP_TEXT)
+        && !(current != null && keyword.equals(current.keyword) && type.equals(current.type)))
+        search.accept(keyword, true);
+    });
+    typingTimer.setRepeats(false);
+    searchField.getDocument().addDocumentListener(new DocumentListener() {
+      public void insertUpdate(DocumentEvent e) {
+        typingTimer.restart();
+      }
+
+      public void removeUpdate(DocumentEvent e) {
+        typingTimer.restart();
+      }
+
+      public void changedUpdate(DocumentEvent e) {
+      }
+    });
+
     // create a tabs pane for the hit details
     final HitInfoJTabbedPane currentHitInfoPane = new HitInfoJTabbedPane(hitsModel);
     currentHitInfoPane.setPreferredSize(new Dimension(300, 200));
@@ -405,6 +535,8 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
 
     // and add it as an Observer for the hits model (the Observable)
     hitsModel.addObserver(filterPanel);
+    // which also shows (filters) the next page hits
+    resList.setFiltered(true);
 
     //  Create the search hits view split Pane
     JSplitPane hSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, filterPanel, vSplit);
@@ -434,8 +566,13 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
 
     //info and results parts:
     final Box results = Box.createVerticalBox();
-    info.setAlignmentX(Component.LEFT_ALIGNMENT);
-    results.add(info);
+    final Box infoBox = Box.createHorizontalBox();
+    infoBox.add(info);
+    infoBox.add(Box.createHorizontalGlue());
+    infoBox.add(prevButton);
+    infoBox.add(nextButton);
+    infoBox.setAlignmentX(Component.LEFT_ALIGNMENT);
+    results.add(infoBox);
     hSplit.setAlignmentX(Component.LEFT_ALIGNMENT);
     results.add(hSplit);
 
@@ -445,10 +582,4 @@ final class App extends AbstractWebServiceGUIClient implements NetworkImportWebS
     searchPanel.setMinimumSize(new Dimension(600, 400));
     return searchPanel;
   }
-
-  @Override
-  protected void finalize() throws Throwable {
-    cachedThreadPool.shutdown();
-    super.finalize();
-  }
 }
@@ -0,0 +1,366 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The app's bounded thread pools ("lanes"): each has a fixed max number of threads
+ * and a bounded priority queue (higher priority first, then FIFO), and its own policy
+ * for when the queue is full (tasks dropped by a policy never run, so do not wait for them;
+ * see {@link #execute(Lane, int, Runnable, Runnable)} to undo what such a task would in the end).
+ */
+final class AppExecutors {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AppExecutors.class);
+
+  static final int LOW = -10;
+  static final int NORMAL = 0;
+  static final int HIGH = 10;
+
+  /**
+   * Kinds of work.
+   */
+  enum Lane {
+    /**
+     * UI-triggered searches, details, imports; when the queue is full,
+     * the oldest of the lowest priority waiting tasks is dropped (the user has moved on),
+     * or the new task, if its priority is lower than that.
+     */
+    INTERACTIVE(4, 64, (r, executor) -> {
+      if (executor.isShutdown())
+        dropped(r);
+      else
+        dropped(((BoundedPriorityQueue) executor.getQueue()).replaceLowest(r));
+    }),
+    /**
+     * Prefetch, metadata, cache writes; new tasks are dropped when the queue is full.
+     */
+    BACKGROUND(2, 256, (r, executor) -> dropped(r)),
+    /**
+     * Batch imports; the submitting (task) thread runs the task when the queue is full
+     * (after shutdown, the task is rejected with RejectedExecutionException).
+     */
+    BULK(2, 16, (r, executor) -> {
+      if (executor.isShutdown())
+        throw new RejectedExecutionException("Executor is shut down");
+      r.run();
+    });
+
+    private final int threads;
+    private final int capacity;
+    private final RejectedExecutionHandler rejectionPolicy;
+
+    Lane(int threads, int capacity, RejectedExecutionHandler rejectionPolicy) {
+      this.threads = threads;
+      this.capacity = capacity;
+      this.rejectionPolicy = rejectionPolicy;
+    }
+  }
+
+  // created by start (again after shutdown, e.g., when the app is stopped and started in the same class loader)
+  private static volatile Map<Lane, LaneExecutor> lanes;
+  // for blocking web service calls (virtual threads, if enabled and supported)
+  private static volatile ExecutorService io;
+  private static volatile boolean virtual;
+
+  private AppExecutors() {
+  }
+
+  /**
+   * Creates new lanes (when the app starts); the old ones, if any, are shut down.
+   */
+  static synchronized void start() {
+    final Map<Lane, LaneExecutor> created = new EnumMap<>(Lane.class);
+    for (Lane lane : Lane.values())
+      created.put(lane, new LaneExecutor(lane));
+    final Map<Lane, LaneExecutor> old = lanes;
+    lanes = created;
+    if (old != null) {
+      for (LaneExecutor executor : old.values())
+        executor.shutdown();
+    }
+  }
+
+  // the lane's executor (the lanes are created if not started yet)
+  private static LaneExecutor lane(Lane lane) {
+    Map<Lane, LaneExecutor> current = lanes;
+    if (current == null) {
+      synchronized (AppExecutors.class) {
+        if (lanes == null)
+          start();
+        current = lanes;
+      }
+    }
+    return current.get(lane);
+  }
+
+  /**
+   * @param lane kind of work
+   * @return the lane's executor (e.g., for CompletableFuture async methods); NORMAL priority
+   */
+  static ExecutorService executor(Lane lane) {
+    return lane(lane);
+  }
+
+  /**
+   * Runs the task in the lane with the priority.
+   *
+   * @param lane     kind of work
+   * @param priority e.g., {@link #HIGH}
+   * @param task     task
+   */
+  static void execute(Lane lane, int priority, Runnable task) {
+    execute(lane, priority, task, null);
+  }
+
+  /**
+   * Runs the task in the lane with the priority; if the task is dropped instead (the queue is full,
+   * or the app is stopping), calls onDropped (e.g., to reset the UI state as the task would).
+   *
+   * @param lane      kind of work
+   * @param priority  e.g., {@link #HIGH}
+   * @param task      task
+   * @param onDropped called (once, on the thread that drops the task) if the task never runs; can be null
+   */
+  static void execute(Lane lane, int priority, Runnable task, Runnable onDropped) {
+    lane(lane).execute(new PrioritizedTask<>(task, null, priority, onDropped));
+  }
+
+  /**
+   * Sets the executor for blocking I/O: a new virtual thread per task,
+   * when enabled and the JVM supports that (Java 21+), or else a bounded pool of platform threads.
+   *
+   * @param useVirtualThreads whether to try virtual threads
+   */
+  static synchronized void initIo(boolean useVirtualThreads) {
+    ExecutorService executor = null;
+    if (useVirtualThreads) {
+      try {
+        // via reflection, for the app is built for Java 11
+        executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        LOGGER.info("Using virtual threads for web service calls");
+      } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+        LOGGER.info("Virtual threads are not available (" + e + "); using platform threads");
+      }
+    }
+    if (executor == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(16, 16, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(1024), new NamedThreadFactory("cypath2-io-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+    }
+    final ExecutorService old = io;
+    io = executor;
+    virtual = !(executor instanceof ThreadPoolExecutor);
+    if (old != null)
+      old.shutdown();
+  }
+
+  /**
+   * @return the executor for blocking web service calls (see {@link #initIo(boolean)})
+   */
+  static ExecutorService io() {
+    if (io == null)
+      initIo(false);
+    return io;
+  }
+
+  /**
+   * @param lane kind of work
+   * @return number of tasks waiting in the queue
+   */
+  static int queued(Lane lane) {
+    return lane(lane).getQueue().size();
+  }
+
+  /**
+   * @param lane kind of work
+   * @return number of threads running tasks now
+   */
+  static int active(Lane lane) {
+    return lane(lane).getActiveCount();
+  }
+
+  /**
+   * @return queue and active threads gauges of all the lanes
+   */
+  static String gauges() {
+    final StringBuilder sb = new StringBuilder();
+    for (Lane lane : Lane.values()) {
+      if (sb.length() > 0)
+        sb.append("; ");
+      sb.append(lane.name().toLowerCase()).append(": ")
+        .append(active(lane)).append('/').append(lane.threads).append(" active, ")
+        .append(queued(lane)).append('/').append(lane.capacity).append(" queued");
+    }
+    final ExecutorService executor = io;
+    if (executor instanceof ThreadPoolExecutor) {
+      sb.append("; io: ").append(((ThreadPoolExecutor) executor).getActiveCount()).append(" active, ")
+        .append(((ThreadPoolExecutor) executor).getQueue().size()).append(" queued");
+    } else if (executor != null) {
+      sb.append("; io: virtual threads");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Stops accepting tasks, waits a little for the running ones, then interrupts them
+   * (until {@link #start()}, new tasks are dropped or rejected).
+   */
+  static void shutdown() {
+    final Map<Lane, LaneExecutor> current = lanes;
+    if (current == null)
+      return;
+    LOGGER.info("Shutting down the executors (" + gauges() + ")");
+    for (LaneExecutor executor : current.values())
+      executor.shutdown();
+    if (io != null)
+      io.shutdownNow();
+    for (Map.Entry<Lane, LaneExecutor> e : current.entrySet()) {
+      try {
+        if (!e.getValue().awaitTermination(2, TimeUnit.SECONDS))
+          e.getValue().shutdownNow();
+      } catch (InterruptedException ex) {
+        e.getValue().shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // cancels the task (if any) dropped by a rejection policy, and lets its submitter know
+  private static void dropped(Runnable task) {
+    if (task == null)
+      return;
+    LOGGER.debug("Dropped a task (the queue is full or the executor is shut down)");
+    if (task instanceof PrioritizedTask)
+      ((PrioritizedTask<?>) task).drop();
+  }
+
+  private static final class LaneExecutor extends ThreadPoolExecutor {
+    LaneExecutor(Lane lane) {
+      super(lane.threads, lane.threads, 60L, TimeUnit.SECONDS,
+        new BoundedPriorityQueue(lane.capacity),
+        new NamedThreadFactory("cypath2-" + lane.name().toLowerCase() + "-"), lane.rejectionPolicy);
+      allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      super.execute((command instanceof PrioritizedTask)
+        ? command : new PrioritizedTask<>(command, null, NORMAL, null));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+      return new PrioritizedTask<>(runnable, value, NORMAL, null);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+      return new PrioritizedTask<>(callable, NORMAL);
+    }
+  }
+
+  private static final class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private final int priority;
+    private final long sequence = SEQUENCE.getAndIncrement();
+    private final Runnable onDropped;
+
+    PrioritizedTask(Runnable runnable, T result, int priority, Runnable onDropped) {
+      super(runnable, result);
+      this.priority = priority;
+      this.onDropped = onDropped;
+    }
+
+    PrioritizedTask(Callable<T> callable, int priority) {
+      super(callable);
+      this.priority = priority;
+      this.onDropped = null;
+    }
+
+    // the task will not run
+    void drop() {
+      if (cancel(false) && onDropped != null) {
+        try {
+          onDropped.run();
+        } catch (RuntimeException e) {
+          LOGGER.warn("Failed to clean up after a dropped task", e);
+        }
+      }
+    }
+
+    // whether this one is dropped before the other when the queue is full (lower priority, then older)
+    boolean dropsBefore(PrioritizedTask<?> o) {
+      return (priority != o.priority) ? priority < o.priority : sequence < o.sequence;
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask<?> o) {
+      return (priority != o.priority)
+        ? Integer.compare(o.priority, priority) : Long.compare(sequence, o.sequence);
+    }
+  }
+
+  // refuses new elements when full (then the executor applies its rejection policy)
+  private static final class BoundedPriorityQueue extends PriorityBlockingQueue<Runnable> {
+    private final int capacity;
+
+    BoundedPriorityQueue(int capacity) {
+      this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized boolean offer(Runnable r) {
+      return size() < capacity && super.offer(r);
+    }
+
+    @Override
+    public int remainingCapacity() {
+      return Math.max(0, capacity - size());
+    }
+
+    // adds the task in place of the oldest lowest priority one; returns the dropped task (can be r), or null
+    synchronized Runnable replaceLowest(Runnable r) {
+      PrioritizedTask<?> lowest = null;
+      for (Runnable e : this) {
+        if (e instanceof PrioritizedTask
+          && (lowest == null || ((PrioritizedTask<?>) e).dropsBefore(lowest)))
+          lowest = (PrioritizedTask<?>) e;
+      }
+      if (size() >= capacity) {
+        if (lowest == null || !(r instanceof PrioritizedTask) || ((PrioritizedTask<?>) r).dropsBefore(lowest))
+          return r;
+        if (!remove(lowest))
+          lowest = null; //has just been taken by a worker
+      } else {
+        lowest = null; //there is room again
+      }
+      super.offer(r);
+      return lowest;
+    }
+  }
+
+  private static final class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      final Thread thread = new Thread(r, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
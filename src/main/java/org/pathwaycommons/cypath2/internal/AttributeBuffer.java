@@ -0,0 +1,160 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.cytoscape.event.CyEventHelper;
+import org.cytoscape.model.*;
+
+import java.util.*;
+
+/**
+ * Collects attribute values of many network objects per table and column,
+ * and writes them into the CyTables at once, column by column (see {@link #flush()}).
+ * Unlike {@link Attributes#set}, it does not look up the row, table and column
+ * for every value, and the table events are batched (or not fired for a new network).
+ * New columns named after BioPAX properties (or property paths, e.g., "xref/db")
+ * are lists if the property is multiple cardinality (see {@link SimpleEditorMap#L3}).
+ */
+final class AttributeBuffer {
+
+  // BioPAX property to whether it's multiple cardinality (in any class)
+  private static final Map<String, Boolean> MULTIPLE_CARDINALITY = multipleCardinality();
+
+  private final CyNetwork network;
+  // object kind (node, edge, network) and table name to the table
+  private final Map<Class<?>, Map<String, CyTable>> tables = new HashMap<>();
+  private final Map<CyTable, Map<String, Column>> columns = new LinkedHashMap<>();
+
+  AttributeBuffer(CyNetwork network) {
+    this.network = network;
+  }
+
+  public void set(CyIdentifiable entry, String name, Object value, Class<?> type) {
+    set(entry, CyNetwork.DEFAULT_ATTRS, name, value, type);
+  }
+
+  public void set(CyIdentifiable entry, String tableName, String name, Object value, Class<?> type) {
+    if (value == null)
+      return;
+
+    Map<String, Column> cols = columns.computeIfAbsent(table(entry, tableName), t -> new LinkedHashMap<>());
+    Column column = cols.get(name);
+    if (column == null) {
+      if (!(value instanceof List) && value instanceof Collection)
+        throw new IllegalArgumentException("Attribute value is a Collection and not List: "
+          + value.getClass().getSimpleName());
+      column = new Column(type, isList(name, value));
+      cols.put(name, column);
+    }
+    column.values.put(entry.getSUID(), value);
+  }
+
+  /**
+   * Gets the value that was set but not yet written to the table.
+   *
+   * @param entry node, edge or network
+   * @param name  column name (default table)
+   * @param type  value type
+   * @return value or null
+   */
+  public <T> T get(CyIdentifiable entry, String name, Class<T> type) {
+    Map<String, Column> cols = columns.get(table(entry, CyNetwork.DEFAULT_ATTRS));
+    Column column = (cols == null) ? null : cols.get(name);
+    return (column == null) ? null : type.cast(column.values.get(entry.getSUID()));
+  }
+
+  /**
+   * Creates the missing columns and writes all the buffered values;
+   * then clears the buffer.
+   * Row events are not fired if the network is not registered yet (no one listens),
+   * or else they are fired once per table.
+   */
+  public void flush() {
+    final CyEventHelper events = (App.cyServices != null) ? App.cyServices.eventHelper : null;
+    final boolean silent = events != null && !App.cyServices.networkManager.getNetworkSet().contains(network);
+    for (Map.Entry<CyTable, Map<String, Column>> t : columns.entrySet()) {
+      final CyTable table = t.getKey();
+      if (silent)
+        events.silenceEventSource(table);
+      try {
+        write(table, t.getValue());
+      } finally {
+        if (silent)
+          events.unsilenceEventSource(table);
+        else if (events != null)
+          events.flushPayloadEvents();
+      }
+    }
+    columns.clear();
+  }
+
+  private static void write(CyTable table, Map<String, Column> cols) {
+    final Map<Long, CyRow> rows = new HashMap<>();
+    for (Map.Entry<String, Column> c : cols.entrySet()) {
+      final String name = c.getKey();
+      final Column column = c.getValue();
+      final CyColumn existing = table.getColumn(name);
+      final boolean list;
+      if (existing == null) {
+        list = column.list;
+        if (list)
+          table.createListColumn(name, column.type, false);
+        else
+          table.createColumn(name, column.type, false);
+      } else {
+        list = existing.getType() == List.class;
+      }
+      for (Map.Entry<Long, Object> v : column.values.entrySet())
+        rows.computeIfAbsent(v.getKey(), table::getRow).set(name, convert(v.getValue(), list));
+    }
+  }
+
+  // a list if the attribute's BioPAX property (the last one of a path) is multiple cardinality, or the value is a list
+  private static boolean isList(String name, Object value) {
+    final Boolean multiple = MULTIPLE_CARDINALITY.get(name.substring(name.lastIndexOf('/') + 1));
+    return (multiple != null && !CyNetwork.NAME.equals(name)) ? multiple : value instanceof List;
+  }
+
+  // fits the value to the column (a one-element list, or a list's first element)
+  private static Object convert(Object value, boolean list) {
+    if (list == value instanceof List)
+      return value;
+    if (list)
+      return Collections.singletonList(value);
+    final List<?> values = (List<?>) value;
+    return (values.isEmpty()) ? null : values.get(0);
+  }
+
+  private static Map<String, Boolean> multipleCardinality() {
+    final Map<String, Boolean> map = new HashMap<>();
+    for (Class<? extends BioPAXElement> type : SimpleEditorMap.L3.getKnownSubClassesOf(BioPAXElement.class)) {
+      for (PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(type))
+        map.merge(editor.getProperty(), editor.isMultipleCardinality(), Boolean::logicalOr);
+    }
+    return map;
+  }
+
+  private CyTable table(CyIdentifiable entry, String tableName) {
+    final Class<?> kind = (entry instanceof CyNode) ? CyNode.class
+      : (entry instanceof CyEdge) ? CyEdge.class : CyNetwork.class;
+    Map<String, CyTable> kindTables = tables.computeIfAbsent(kind, k -> new HashMap<>());
+    CyTable table = kindTables.get(tableName);
+    if (table == null) {
+      table = network.getRow(entry, tableName).getTable();
+      kindTables.put(tableName, table);
+    }
+    return table;
+  }
+
+  private static final class Column {
+    final Class<?> type;
+    final boolean list;
+    final Map<Long, Object> values = new LinkedHashMap<>();
+
+    Column(Class<?> type, boolean list) {
+      this.type = type;
+      this.list = list;
+    }
+  }
+}
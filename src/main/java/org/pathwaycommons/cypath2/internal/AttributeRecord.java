@@ -0,0 +1,37 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Node attribute values computed from a BioPAX element
+ * (String or List of String values) before they get written to the network tables.
+ */
+final class AttributeRecord {
+  private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+  private final Map<String, Object> hiddenValues = new LinkedHashMap<String, Object>();
+
+  void set(String name, Object value) {
+    if (value != null)
+      values.put(name, value);
+  }
+
+  void setHidden(String name, Object value) {
+    if (value != null)
+      hiddenValues.put(name, value);
+  }
+
+  <T> T get(String name, Class<T> type) {
+    return type.cast(values.get(name));
+  }
+
+  void writeTo(AttributeBuffer attrs, CyNode node) {
+    for (Map.Entry<String, Object> e : values.entrySet())
+      attrs.set(node, e.getKey(), e.getValue(), String.class);
+    for (Map.Entry<String, Object> e : hiddenValues.entrySet())
+      attrs.set(node, CyNetwork.HIDDEN_ATTRS, e.getKey(), e.getValue(), String.class);
+  }
+}
@@ -0,0 +1,76 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Imports the sub-network reachable from given URIs (e.g., a pathway)
+ * from a large local BioPAX RDF/XML file, using the file index
+ * (see {@link BioPaxFileIndex}) instead of parsing the entire file.
+ */
+final class BioPaxFileImportTask extends AbstractTask {
+
+  @Tunable(description = "BioPAX file:", gravity = 701, groups = " ",
+    params = "input=true;fileCategory=network",
+    tooltip = "BioPAX Level3 RDF/XML file (e.g., a Pathway Commons bulk export);<br/>" +
+      "the first time, it is indexed (scanned once), which can take a while")
+  public File file;
+
+  @Tunable(description = "URIs to start from:", gravity = 702, groups = " ",
+    tooltip = "Absolute URIs of pathways, interactions or other BioPAX objects in the file<br/>" +
+      "(separated by spaces or commas); everything they refer to is imported too")
+  public String seeds;
+
+  private final File indexDir;
+
+  BioPaxFileImportTask(File indexDir) {
+    this.indexDir = indexDir;
+    this.seeds = "";
+  }
+
+  @ProvidesTitle
+  public String tunablesDlgTitle() {
+    return "PathwayCommons: Import from BioPAX File";
+  }
+
+  @Override
+  public void run(TaskMonitor taskMonitor) throws Exception {
+    taskMonitor.setTitle("PathwayCommons: Import from BioPAX File");
+    if (cancelled) return;
+
+    if (file == null || !file.isFile())
+      throw new IllegalArgumentException("BioPAX file not found: " + file);
+    final Set<String> uris = new LinkedHashSet<>(Arrays.asList(seeds.trim().split("[,\\s]+")));
+    uris.remove("");
+    if (uris.isEmpty())
+      throw new IllegalArgumentException("No URIs to start from.");
+
+    taskMonitor.setStatusMessage("Opening the index of " + file.getName() + "...");
+    final BioPaxFileIndex.Subgraph subgraph;
+    try (BioPaxFileIndex index = BioPaxFileIndex.open(file, indexDir, taskMonitor)) {
+      if (cancelled) return;
+      taskMonitor.setStatusMessage("Collecting the BioPAX objects reachable from " + uris.size() + " URIs...");
+      subgraph = index.subgraph(uris);
+    }
+    if (subgraph == null) {
+      taskMonitor.setStatusMessage("None of the URIs was found in " + file.getName());
+      return;
+    }
+    taskMonitor.setStatusMessage("Found " + subgraph.size + " BioPAX objects");
+    taskMonitor.setProgress(1.0);
+
+    // the same objects of the same file make the same model
+    final BioPaxReaderTask reader = new BioPaxReaderTask(subgraph::open, file.getName(),
+      ModelSnapshots.fileKey(file) + "?uri=" + String.join(",", new TreeSet<>(uris)));
+    //the BioPAX reader creates a network; the next task registers it and adds the view
+    insertTasksAfterCurrentTask(reader, NetworkAndViewTask.createRegisterTask(reader, file.getName()));
+  }
+}
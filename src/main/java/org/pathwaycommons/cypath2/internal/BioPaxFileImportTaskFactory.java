@@ -0,0 +1,26 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.cytoscape.work.AbstractTaskFactory;
+import org.cytoscape.work.TaskIterator;
+
+import java.io.File;
+
+/**
+ * Creates tasks that import sub-networks from large local BioPAX files.
+ */
+final class BioPaxFileImportTaskFactory extends AbstractTaskFactory {
+
+  private final File indexDir;
+
+  /**
+   * @param indexDir where to keep the file indices
+   */
+  BioPaxFileImportTaskFactory(File indexDir) {
+    this.indexDir = indexDir;
+  }
+
+  @Override
+  public TaskIterator createTaskIterator() {
+    return new TaskIterator(new BioPaxFileImportTask(indexDir));
+  }
+}
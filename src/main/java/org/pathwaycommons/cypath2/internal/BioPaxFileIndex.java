@@ -0,0 +1,577 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.cytoscape.work.TaskMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent index of a (large) BioPAX RDF/XML file: for each top-level element,
+ * the URI, the byte offsets and the URIs it refers to (rdf:resource).
+ * The index file is memory-mapped; it's made once per file version (path, size and time)
+ * and then re-used. Given seed URIs, {@link #subgraph(Collection)} returns a small RDF/XML document
+ * made of the original prolog and only the elements reachable from the seeds,
+ * without parsing the entire file.
+ */
+final class BioPaxFileIndex implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BioPaxFileIndex.class);
+  private static final int MAGIC = 0x42505849; //"BPXI"
+  private static final int VERSION = 1;
+  // magic, version, source length, source time, prolog end, count, table offset, table size, root name
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 8 + 4 + 256;
+
+  private final File source;
+  private final FileChannel channel;
+  private final Mapped index;
+  private final long prologEnd;
+  private final long tableOffset;
+  private final int tableSize;
+  private final String rootName;
+
+  private BioPaxFileIndex(File source, File indexFile) throws IOException {
+    this.source = source;
+    this.channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+    this.index = new Mapped(channel, FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+    if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION
+      || index.getLong(8) != source.length() || index.getLong(16) != source.lastModified()) {
+      channel.close();
+      throw new IOException("Outdated or invalid index file " + indexFile);
+    }
+    this.prologEnd = index.getLong(24);
+    this.tableOffset = index.getLong(36);
+    this.tableSize = index.getInt(44);
+    this.rootName = index.getString(48);
+  }
+
+  /**
+   * Opens the index of the BioPAX file (builds the index if it does not exist or is outdated).
+   *
+   * @param source      BioPAX RDF/XML file
+   * @param indexDir    directory for index files
+   * @param taskMonitor progress monitor
+   * @return index
+   * @throws IOException when reading or writing fails
+   */
+  static BioPaxFileIndex open(File source, File indexDir, TaskMonitor taskMonitor) throws IOException {
+    if (!indexDir.isDirectory() && !indexDir.mkdirs())
+      throw new IOException("Cannot create directory " + indexDir);
+    final File indexFile = new File(indexDir, indexName(source));
+    if (indexFile.isFile()) {
+      try {
+        return new BioPaxFileIndex(source, indexFile);
+      } catch (IOException e) {
+        LOGGER.info(e.getMessage() + "; will re-index " + source);
+      }
+    }
+    final long start = System.currentTimeMillis();
+    final File tmp = File.createTempFile("index", ".tmp", indexDir);
+    try {
+      new Builder(source, tmp).build(taskMonitor);
+      Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      tmp.delete();
+    }
+    LOGGER.info("Indexed " + source + " in " + (System.currentTimeMillis() - start) + " ms");
+    return new BioPaxFileIndex(source, indexFile);
+  }
+
+  /**
+   * Finds the elements reachable from the seeds via rdf:resource references.
+   *
+   * @param seeds URIs
+   * @return number of elements and the RDF/XML document made of them
+   * (or null when none of the seeds is in the file)
+   * @throws IOException when reading the source file fails
+   */
+  Subgraph subgraph(Collection<String> seeds) throws IOException {
+    final Set<String> visited = new HashSet<>();
+    final Deque<String> queue = new ArrayDeque<>();
+    final TreeMap<Long, Long> ranges = new TreeMap<>();
+    for (String seed : seeds) {
+      if (visited.add(seed))
+        queue.add(seed);
+    }
+    while (!queue.isEmpty()) {
+      final long record = find(queue.poll());
+      if (record < 0)
+        continue; //not defined in the file
+      long pos = record;
+      pos += 4 + index.getInt(pos); //uri
+      ranges.put(index.getLong(pos), index.getLong(pos + 8));
+      pos += 16;
+      final int refs = index.getInt(pos);
+      pos += 4;
+      for (int i = 0; i < refs; i++) {
+        final String ref = index.getString(pos);
+        pos += 4 + index.getInt(pos);
+        if (visited.add(ref))
+          queue.add(ref);
+      }
+    }
+    if (ranges.isEmpty())
+      return null;
+
+    ranges.put(0L, prologEnd);
+    return new Subgraph(source, ranges, ("\n</" + rootName + ">\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Result of {@link #subgraph(Collection)}.
+   */
+  static final class Subgraph {
+    final int size;
+    private final File source;
+    private final SortedMap<Long, Long> ranges;
+    private final byte[] tail;
+
+    private Subgraph(File source, SortedMap<Long, Long> ranges, byte[] tail) {
+      this.size = ranges.size() - 1; //without the prolog
+      this.source = source;
+      this.ranges = ranges;
+      this.tail = tail;
+    }
+
+    /**
+     * @return new stream of the RDF/XML document (the source file is opened now)
+     * @throws IOException when the file cannot be opened
+     */
+    InputStream open() throws IOException {
+      return new RangesInputStream(source, ranges, tail);
+    }
+  }
+
+  // the record position, or -1
+  private long find(String uri) {
+    final byte[] key = uri.getBytes(StandardCharsets.UTF_8);
+    final int mask = tableSize - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      final long record = index.getLong(tableOffset + 8L * slot);
+      if (record == 0L)
+        return -1L;
+      if (index.equalBytes(record + 4, index.getInt(record), key))
+        return record;
+    }
+  }
+
+  private static int hash(byte[] key) {
+    int h = Arrays.hashCode(key);
+    return h ^ (h >>> 16);
+  }
+
+  private static String indexName(File source) throws IOException {
+    final String id = source.getCanonicalPath() + "|" + source.length() + "|" + source.lastModified();
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 16; i++)
+        sb.append(String.format("%02x", digest[i]));
+      return sb.append(".idx").toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Scans the RDF/XML bytes once (no XML parser) and writes the index file:
+   * header, records, then the open-addressing hash table of the record positions.
+   */
+  private static final class Builder {
+    private final File source;
+    private final File indexFile;
+    private InputStream in;
+    private long pos;
+    private DataOutputStream out;
+    private long outPos;
+    private String base = "";
+    private int count;
+    private int[] hashes = new int[1024];
+    private long[] records = new long[1024];
+
+    Builder(File source, File indexFile) {
+      this.source = source;
+      this.indexFile = indexFile;
+    }
+
+    void build(TaskMonitor taskMonitor) throws IOException {
+      long prologEnd = -1L;
+      String rootName = null;
+      final long length = source.length();
+      try (InputStream is = new BufferedInputStream(new FileInputStream(source), 1 << 16);
+           DataOutputStream os = new DataOutputStream(
+             new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16))) {
+        this.in = is;
+        this.out = os;
+        os.write(new byte[HEADER_SIZE]);
+        outPos = HEADER_SIZE;
+
+        int depth = 0;
+        long elementStart = -1L;
+        String uri = null;
+        Set<String> refs = null;
+        long nextProgress = 0L;
+        int c;
+        while ((c = read()) >= 0) {
+          if (c != '<')
+            continue;
+          final long tagStart = pos - 1;
+          if (pos > nextProgress) {
+            taskMonitor.setProgress(0.9 * pos / length);
+            nextProgress = pos + (1 << 24);
+          }
+          c = read();
+          if (c == '?') {
+            skipPast("?>");
+          } else if (c == '!') {
+            c = read();
+            if (c == '-')
+              skipPast("-->");
+            else if (c == '[')
+              skipPast("]]>"); //CDATA
+            else
+              skipDeclaration();
+          } else if (c == '/') {
+            skipPast(">");
+            depth--;
+            if (depth == 1 && elementStart >= 0) {
+              addRecord(uri, elementStart, pos, refs);
+              elementStart = -1L;
+            }
+          } else if (c >= 0) {
+            // start tag
+            final StringBuilder name = new StringBuilder();
+            while (c >= 0 && c != '>' && c != '/' && !Character.isWhitespace(c)) {
+              name.append((char) c);
+              c = read();
+            }
+            final Map<String, String> attributes = new HashMap<>();
+            final boolean empty = readAttributes(c, attributes);
+            depth++;
+            if (depth == 1) {
+              rootName = name.toString();
+              prologEnd = pos;
+              if (attributes.containsKey("xml:base"))
+                base = attributes.get("xml:base");
+            } else if (depth == 2) {
+              elementStart = tagStart;
+              uri = attribute(attributes, "about");
+              if (uri != null)
+                uri = resolve(uri);
+              else if (attribute(attributes, "ID") != null)
+                uri = base + attribute(attributes, "ID");
+              refs = new LinkedHashSet<>();
+            }
+            if (depth >= 2 && refs != null) {
+              String ref = attribute(attributes, "resource");
+              if (ref != null)
+                refs.add(resolve(ref));
+            }
+            if (empty) {
+              depth--;
+              if (depth == 1 && elementStart >= 0) {
+                addRecord(uri, elementStart, pos, refs);
+                elementStart = -1L;
+              }
+            }
+          }
+        }
+      }
+      if (rootName == null)
+        throw new IOException("Not an XML document: " + source);
+
+      // hash table (after the records), then the header
+      int tableSize = Integer.highestOneBit(Math.max(count * 2, 2) - 1) << 1;
+      final long tableOffset = outPos;
+      try (FileChannel ch = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        final Mapped table = new Mapped(ch, FileChannel.MapMode.READ_WRITE, tableOffset, 8L * tableSize);
+        final int mask = tableSize - 1;
+        for (int i = 0; i < count; i++) {
+          int slot = hashes[i] & mask;
+          while (table.getLong(8L * slot) != 0L)
+            slot = (slot + 1) & mask;
+          table.putLong(8L * slot, records[i]);
+        }
+        table.force();
+
+        final byte[] root = rootName.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putLong(source.lastModified())
+          .putLong(prologEnd).putInt(count).putLong(tableOffset).putInt(tableSize)
+          .putInt(root.length).put(root);
+        header.rewind();
+        ch.write(header, 0L);
+        ch.force(true);
+      }
+      taskMonitor.setProgress(0.9);
+    }
+
+    private void addRecord(String uri, long start, long end, Set<String> refs) throws IOException {
+      if (uri == null)
+        return;
+      final byte[] key = uri.getBytes(StandardCharsets.UTF_8);
+      if (count == records.length) {
+        records = Arrays.copyOf(records, count * 2);
+        hashes = Arrays.copyOf(hashes, count * 2);
+      }
+      records[count] = outPos;
+      hashes[count] = hash(key);
+      count++;
+      writeBytes(key);
+      out.writeLong(start);
+      out.writeLong(end);
+      out.writeInt(refs.size());
+      outPos += 20;
+      for (String ref : refs)
+        writeBytes(ref.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      outPos += 4 + bytes.length;
+    }
+
+    // reads attributes up to the end of the tag; returns true if it's an empty element tag
+    private boolean readAttributes(int c, Map<String, String> attributes) throws IOException {
+      while (c >= 0) {
+        if (c == '>')
+          return false;
+        if (c == '/') {
+          skipPast(">");
+          return true;
+        }
+        if (Character.isWhitespace(c)) {
+          c = read();
+          continue;
+        }
+        final StringBuilder name = new StringBuilder();
+        while (c >= 0 && c != '=' && !Character.isWhitespace(c)) {
+          name.append((char) c);
+          c = read();
+        }
+        while (c >= 0 && c != '"' && c != '\'')
+          c = read();
+        final int quote = c;
+        final ByteArrayOutputStream value = new ByteArrayOutputStream();
+        while ((c = read()) >= 0 && c != quote)
+          value.write(c);
+        attributes.put(name.toString(), unescape(new String(value.toByteArray(), StandardCharsets.UTF_8)));
+        c = read();
+      }
+      return false;
+    }
+
+    // DOCTYPE (can have an internal subset in brackets)
+    private void skipDeclaration() throws IOException {
+      int brackets = 0;
+      int quote = 0;
+      int c;
+      while ((c = read()) >= 0) {
+        if (quote != 0) {
+          if (c == quote)
+            quote = 0;
+        } else if (c == '"' || c == '\'') {
+          quote = c;
+        } else if (c == '[') {
+          brackets++;
+        } else if (c == ']') {
+          brackets--;
+        } else if (c == '>' && brackets <= 0) {
+          return;
+        }
+      }
+    }
+
+    private void skipPast(String end) throws IOException {
+      final int n = end.length();
+      int matched = 0;
+      int c;
+      while ((c = read()) >= 0) {
+        if (c == end.charAt(matched)) {
+          if (++matched == n)
+            return;
+        } else {
+          matched = (c == end.charAt(0)) ? 1 : 0;
+        }
+      }
+    }
+
+    private int read() throws IOException {
+      int c = in.read();
+      if (c >= 0)
+        pos++;
+      return c;
+    }
+
+    // same as the paxtools reader does with xml:base
+    private String resolve(String uri) {
+      return (uri.startsWith("#")) ? base + uri.substring(1) : uri;
+    }
+
+    // attribute by local name (e.g., "about" for "rdf:about")
+    private static String attribute(Map<String, String> attributes, String localName) {
+      for (Map.Entry<String, String> e : attributes.entrySet()) {
+        final String name = e.getKey();
+        if (name.equals(localName) || name.endsWith(":" + localName))
+          return e.getValue();
+      }
+      return null;
+    }
+
+    private static String unescape(String value) {
+      if (value.indexOf('&') < 0)
+        return value;
+      final StringBuilder sb = new StringBuilder();
+      int i = 0;
+      while (i < value.length()) {
+        final char ch = value.charAt(i);
+        final int semi = (ch == '&') ? value.indexOf(';', i) : -1;
+        if (semi < 0) {
+          sb.append(ch);
+          i++;
+          continue;
+        }
+        final String entity = value.substring(i + 1, semi);
+        if (entity.equals("amp")) sb.append('&');
+        else if (entity.equals("lt")) sb.append('<');
+        else if (entity.equals("gt")) sb.append('>');
+        else if (entity.equals("quot")) sb.append('"');
+        else if (entity.equals("apos")) sb.append('\'');
+        else if (entity.startsWith("#x")) sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+        else if (entity.startsWith("#")) sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+        else sb.append('&').append(entity).append(';'); //DTD entity; keep as is
+        i = semi + 1;
+      }
+      return sb.toString();
+    }
+  }
+
+  /**
+   * A file region mapped in chunks (there can be more than 2GB).
+   */
+  private static final class Mapped {
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private final MappedByteBuffer[] chunks;
+
+    Mapped(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+      chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+      for (int i = 0; i < chunks.length; i++) {
+        final long start = (long) i << CHUNK_BITS;
+        chunks[i] = channel.map(mode, offset + start, Math.min(1L << CHUNK_BITS, size - start));
+      }
+    }
+
+    byte get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+    }
+
+    int getInt(long pos) {
+      if (((pos & CHUNK_MASK) + 4) <= (1L << CHUNK_BITS))
+        return chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) (pos & CHUNK_MASK));
+      int v = 0;
+      for (int i = 0; i < 4; i++)
+        v = (v << 8) | (get(pos + i) & 0xFF);
+      return v;
+    }
+
+    long getLong(long pos) {
+      return ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xFFFFFFFFL);
+    }
+
+    void putLong(long pos, long value) {
+      for (int i = 0; i < 8; i++)
+        chunks[(int) ((pos + i) >>> CHUNK_BITS)].put((int) ((pos + i) & CHUNK_MASK), (byte) (value >>> (56 - 8 * i)));
+    }
+
+    // a length-prefixed UTF-8 string
+    String getString(long pos) {
+      final byte[] bytes = new byte[getInt(pos)];
+      for (int i = 0; i < bytes.length; i++)
+        bytes[i] = get(pos + 4 + i);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    boolean equalBytes(long pos, int length, byte[] bytes) {
+      if (length != bytes.length)
+        return false;
+      for (int i = 0; i < length; i++) {
+        if (get(pos + i) != bytes[i])
+          return false;
+      }
+      return true;
+    }
+
+    void force() {
+      for (MappedByteBuffer chunk : chunks)
+        chunk.force();
+    }
+  }
+
+  /**
+   * Reads the byte ranges of a file in order, then the tail bytes.
+   */
+  private static final class RangesInputStream extends InputStream {
+    private final FileChannel channel;
+    private final Iterator<Map.Entry<Long, Long>> ranges;
+    private final ByteBuffer tail;
+    private long pos;
+    private long end;
+
+    RangesInputStream(File file, SortedMap<Long, Long> ranges, byte[] tail) throws IOException {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      this.ranges = ranges.entrySet().iterator();
+      this.tail = ByteBuffer.wrap(tail);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      while (pos >= end && ranges.hasNext()) {
+        Map.Entry<Long, Long> range = ranges.next();
+        pos = range.getKey();
+        end = range.getValue();
+      }
+      if (pos < end) {
+        final int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+        if (n < 0)
+          throw new EOFException("The file has changed since indexed");
+        pos += n;
+        return n;
+      }
+      if (!tail.hasRemaining())
+        return -1;
+      final int n = Math.min(len, tail.remaining());
+      tail.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
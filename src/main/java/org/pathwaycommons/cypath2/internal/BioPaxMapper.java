@@ -12,15 +12,19 @@ import org.biopax.paxtools.model.level3.*;
 import org.biopax.paxtools.model.level3.Process;
 import org.biopax.paxtools.pattern.miner.*;
 import org.biopax.paxtools.util.ClassFilterSet;
-import org.biopax.paxtools.util.Filter;
 import org.cytoscape.model.*;
 import org.cytoscape.model.subnetwork.CyRootNetwork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 
 /**
@@ -83,6 +87,12 @@ public class BioPaxMapper {
   private final Map<BioPAXElement, CyNode>
     bpeToCyNodeMap = new HashMap<BioPAXElement, CyNode>();
 
+  // names, xref summaries, etc. shared by the nodes and edges of this import
+  private final DerivedData derived = new DerivedData();
+
+  // nodes that were already in the network (when extending one)
+  private final Set<CyNode> existingNodes = new HashSet<CyNode>();
+
 
   /**
    * Constructor.
@@ -145,7 +155,8 @@ public class BioPaxMapper {
     return new NodeAttributesWrapper(chemicalModificationsSet);
   }
 
-  private static void createExtraXrefAttributes(BioPAXElement resource, CyNetwork network, CyNode node) {
+  private static void createExtraXrefAttributes(BioPAXElement resource, AttributeRecord attrs,
+                                                DerivedData derived) {
 
     // try getting the primary UniProt ID from the URI
     // to create UNIPROT attribute
@@ -160,229 +171,105 @@ public class BioPaxMapper {
       if (u.startsWith("http://identifiers.org/uniprot")) {
         // /uniprot.isoform/ works here as well
         String id = u.substring(u.lastIndexOf('/') + 1);
-        Attributes.set(network, node, "UNIPROT", id, String.class);
+        attrs.set("UNIPROT", id);
       }
     }
 
+    if (!(resource instanceof XReferrable))
+      return;
+
+    // xref summaries of the element itself and its entity reference are shared (memoized)
+    final List<DerivedData.XrefSummary> summaries = new ArrayList<DerivedData.XrefSummary>();
+    summaries.add(derived.xrefs((XReferrable) resource));
+    Set<EntityReference> members = Collections.emptySet();
+    if (resource instanceof SimplePhysicalEntity &&
+      ((SimplePhysicalEntity) resource).getEntityReference() != null) {
+      EntityReference er = ((SimplePhysicalEntity) resource).getEntityReference();
+      summaries.add(derived.xrefs(er));
+      members = er.getMemberEntityReference();
+    } else if (resource instanceof EntityReference) {
+      members = ((EntityReference) resource).getMemberEntityReference();
+    }
+
     //add special simple (String) uniprot, ncbi gene, gene symbol attributes
-    // (do not create those for generic ER/PE, - impossible to define a "primary" ID)
-    for (Xref link : getXRefs(resource, Xref.class, false)) {
-      if (link.getDb() == null || link.getDb().isEmpty()
-        || link.getId() == null || link.getId().isEmpty())
-        continue; // too bad (data issue...); skip it
-      // try to detect and add several important ID attributes first
-      // (it works better, if at all, when the biopax model was normalized)
-      //chances are, if data were normalized, we get some more primary accession IDs:
-      createSpecialXrefAttribute(resource, network, node, link);
+    // (do not create those for generic ER/PE, - impossible to define a "primary" ID);
+    // won't replace any existing value (added first)
+    for (DerivedData.XrefSummary x : summaries) {
+      if (attrs.get("GENE SYMBOL", String.class) == null)
+        attrs.set("GENE SYMBOL", x.geneSymbol);
+      if (attrs.get("NCBI GENE", String.class) == null)
+        attrs.set("NCBI GENE", x.ncbiGene);
+      if (attrs.get("UNIPROT", String.class) == null)
+        attrs.set("UNIPROT", x.uniprot);
     }
 
     // ihop links
-    String stringRef = ihopLinks(resource);
-    if (stringRef != null) {
-      Attributes.set(network, node, CyNetwork.HIDDEN_ATTRS, BIOPAX_IHOP_LINKS, stringRef, String.class);
+    List<String> synList = new ArrayList<String>(getSynonyms(resource));
+    List<ExternalLink> dbList = new ArrayList<ExternalLink>();
+    for (DerivedData.XrefSummary x : summaries)
+      dbList.addAll(x.externalLinks);
+    if (!synList.isEmpty() || !dbList.isEmpty()) {
+      attrs.setHidden(BIOPAX_IHOP_LINKS, ExternalLinkUtil.createIHOPLink(
+        resource.getModelInterface().getSimpleName(), synList, dbList, derived.taxonomyId(resource)));
     }
 
-    //these collections, one per xref class, are to store standard IDs only (no db name)
-    List<String> uniXrefList = new ArrayList<String>();
-    List<String> relXrefList = new ArrayList<String>();
-    List<String> pubXrefList = new ArrayList<String>();
-    //next are for (hidden) list attributes that contain more info about the xref
-    List<String> uniLinkList = new ArrayList<String>();
-    List<String> relLinkList = new ArrayList<String>();
-    List<String> pubLinkList = new ArrayList<String>();
-
     // create several ID-list attributes from xrefs
     // (including from members of/if it's a generic ER/PE)
-    for (Xref link : getXRefs(resource, Xref.class, true)) {
-      if (link.getDb() == null || link.getDb().isEmpty()
-        || link.getId() == null || link.getId().isEmpty())
-        continue; // too bad (data issue...); skip it
-
-      // then, for any xref, collect IDs
-      StringBuffer temp = new StringBuffer();
-      temp.append(ExternalLinkUtil.createLink(link.getDb(), link.getId()));
-
-      String str;
-
-      if (link instanceof UnificationXref) {
-        str = temp.toString();
-        if (!uniLinkList.contains(str))
-          uniLinkList.add(str);
-
-        str = link.toString();
-        if (!uniXrefList.contains(str))
-          uniXrefList.add(str);
-      } else if (link instanceof PublicationXref) {
-
-        PublicationXref xl = (PublicationXref) link;
-        temp.append(" ");
-        if (!xl.getAuthor().isEmpty()) {
-          temp.append(xl.getAuthor().toString() + " et al., ");
-        }
-        if (xl.getTitle() != null) {
-          temp.append(xl.getTitle());
-        }
-        if (!xl.getSource().isEmpty()) {
-          temp.append(" (" + xl.getSource().toString());
-          if (xl.getYear() > 0) {
-            temp.append(", " + xl.getYear());
-          }
-          temp.append(")");
-        }
-
-        str = temp.toString();
-        if (!pubLinkList.contains(str))
-          pubLinkList.add(str);
-
-        str = link.toString();
-        if (!pubXrefList.contains(str))
-          pubXrefList.add(str);
-      } else if (link instanceof RelationshipXref) {
-        str = temp.toString();
-        if (!relLinkList.contains(str))
-          relLinkList.add(str);
-
-        str = link.toString();
-        if (!relXrefList.contains(str))
-          relXrefList.add(str);
-      }
+    for (EntityReference member : members)
+      summaries.add(derived.xrefs(member));
+    Set<String> uniXrefs = new LinkedHashSet<String>();
+    Set<String> relXrefs = new LinkedHashSet<String>();
+    Set<String> pubXrefs = new LinkedHashSet<String>();
+    Set<String> uniLinks = new LinkedHashSet<String>();
+    Set<String> relLinks = new LinkedHashSet<String>();
+    Set<String> pubLinks = new LinkedHashSet<String>();
+    for (DerivedData.XrefSummary x : summaries) {
+      uniXrefs.addAll(x.uniXrefs);
+      relXrefs.addAll(x.relXrefs);
+      pubXrefs.addAll(x.pubXrefs);
+      uniLinks.addAll(x.uniLinks);
+      relLinks.addAll(x.relLinks);
+      pubLinks.addAll(x.pubLinks);
     }
 
-    Attributes.set(network, node, BIOPAX_UNIFICATION, uniXrefList, String.class);
-    Attributes.set(network, node, BIOPAX_RELATIONSHIP, relXrefList, String.class);
-    Attributes.set(network, node, BIOPAX_PUBLICATION, pubXrefList, String.class);
-    Attributes.set(network, node, CyNetwork.HIDDEN_ATTRS, BIOPAX_UNIFICATION_REFERENCES, uniLinkList, String.class);
-    Attributes.set(network, node, CyNetwork.HIDDEN_ATTRS, BIOPAX_RELATIONSHIP_REFERENCES, relLinkList, String.class);
-    Attributes.set(network, node, CyNetwork.HIDDEN_ATTRS, BIOPAX_PUBLICATION_REFERENCES, pubLinkList, String.class);
-  }
-
-  /*
-   * Create special individual String (not List) attributes from specific xref IDs,
-   * HGNC Symbol and NCBI Gene; for others, though, including UniProt, unfortunately,
-   * it's usually hard to find the "primary" ID among others,
-   * without using external databases (it works better, if at all,
-   * when the biopax model was normalized). But let's at least have one
-   * UniProt ID (by chance, if ther're many, unless it's already added).
-   */
-  private static void createSpecialXrefAttribute(BioPAXElement resource, CyNetwork network, CyNode node, Xref link) {
-    final String db = link.getDb().toUpperCase().trim();
-    final String id = link.getId().trim();
-    if (db.equalsIgnoreCase("HGNC SYMBOL") //- official primary db name
-      || db.startsWith("HGNC") || db.startsWith("HUGO GENE")
-      || db.startsWith("GENE SYMBOL") || db.startsWith("GENE NAME")) {
-      String exists = network.getRow(node).get("GENE SYMBOL", String.class);
-      //won't replace any existing value (added first)
-      if (exists == null && !id.startsWith("HGNC:")) //ignore HGNC:12345 IDs
-        Attributes.set(network, node, "GENE SYMBOL", id, String.class);
-
-    } else if (db.equalsIgnoreCase("NCBI GENE") //main (official) db name
-      || db.equalsIgnoreCase("ENTREZ GENE") || db.equalsIgnoreCase("GENE ID")) {
-      String exists = network.getRow(node).get("NCBI GENE", String.class);
-      //won't replace any existing value (added first)
-      if (exists == null)
-        Attributes.set(network, node, "NCBI GENE", id, String.class);
-
-    } else if (db.startsWith("UNIPROT")
-      || db.startsWith("SWISSPROT") || db.startsWith("SWISS-PROT")) {
-      String exists = network.getRow(node).get("UNIPROT", String.class);
-      //won't replace if found
-      if (exists == null)
-        Attributes.set(network, node, "UNIPROT", id, String.class);
-
-    }
+    attrs.set(BIOPAX_UNIFICATION, new ArrayList<String>(uniXrefs));
+    attrs.set(BIOPAX_RELATIONSHIP, new ArrayList<String>(relXrefs));
+    attrs.set(BIOPAX_PUBLICATION, new ArrayList<String>(pubXrefs));
+    attrs.setHidden(BIOPAX_UNIFICATION_REFERENCES, new ArrayList<String>(uniLinks));
+    attrs.setHidden(BIOPAX_RELATIONSHIP_REFERENCES, new ArrayList<String>(relLinks));
+    attrs.setHidden(BIOPAX_PUBLICATION_REFERENCES, new ArrayList<String>(pubLinks));
   }
 
   public static void createAttributesFromProperties(final BioPAXElement element, final Model model,
-                                                    final CyNode node, final CyNetwork network) {
-    @SuppressWarnings("rawtypes")
-    Filter<PropertyEditor> filter = new Filter<PropertyEditor>() {
-      @Override
-      // skips for entity-range properties (which map to edges rather than attributes!),
-      // and several utility classes ranges (for which we do not want generate attributes or do another way)
-      public boolean filter(PropertyEditor editor) {
-        boolean pass = true;
-
-        final String prop = editor.getProperty();
-        if (editor instanceof ObjectPropertyEditor) {
-          Class<?> c = editor.getRange();
-          if (Entity.class.isAssignableFrom(c)
-            || Stoichiometry.class.isAssignableFrom(c)
-            || "nextStep".equals(prop)
-            ) {
-            pass = false;
-            ;
-          }
-        } else if ("name".equals(prop))
-          pass = false;
-
-        return pass;
-      }
-    };
-
-    @SuppressWarnings("unchecked")
-    AbstractTraverser bpeAutoMapper = new AbstractTraverser(SimpleEditorMap.L3, filter) {
-      final Stack<String> propPath = new Stack<String>();
-
-      @SuppressWarnings("rawtypes")
-      @Override
-      protected void visit(Object obj, BioPAXElement bpe, Model model,
-                           PropertyEditor editor) {
-        if (obj != null && !editor.isUnknown(obj)) {
-          propPath.push(editor.getProperty());
-          final String attrName = StringUtils.join(propPath, "/");
-          String value = obj.toString();
-          if (!"".equalsIgnoreCase(value.toString().replaceAll("\\]|\\[", ""))) {
-            if (editor.isMultipleCardinality()) {
-              CyRow row = network.getRow(node);
-              List<String> vals = new ArrayList<String>();
-              // consider existing attribute values
-              if (row.isSet(attrName)) {
-                Class<?> listElementType = row.getTable().getColumn(attrName).getListElementType();
-                List prevList = row.getList(attrName, listElementType);
-                if (!prevList.contains(value)) prevList.add(value);
-              } else { //create
-                vals.add(value);
-                Attributes.set(network, node, attrName, vals, String.class);
-              }
-            } else {
-              Attributes.set(network, node, attrName, value, String.class);
-            }
-          }
-
-          // currently, we don't map absolutely all BioPAX relationships to edges/attributes:
-          // traverse deeper only if it's an object range property
-          // or single cardinality (- otherwise would
-          // result with having too many/branchy Cy attributes)
-          if (editor instanceof ObjectPropertyEditor
-            && !editor.isMultipleCardinality())
-          // this effectively prevents going into details for
-          // such objects as values of 'xref', 'memberEntityReference',
-          // 'componentStoichiometry', etc. props.
-          {
-            traverse((BioPAXElement) obj, null);
-          }
+                                                    final CyNode node, final AttributeBuffer attrs,
+                                                    final DerivedData derived) {
+    computeAttributes(element, model, derived).writeTo(attrs, node);
+  }
 
-          propPath.pop();
-        }
-      }
-    };
+  /*
+   * Computes node attributes from the BioPAX element's properties, xrefs, etc.;
+   * it only reads the model, so can be called concurrently.
+   */
+  private static AttributeRecord computeAttributes(final BioPAXElement element, final Model model,
+                                                   final DerivedData derived) {
+    final AttributeRecord attrs = new AttributeRecord();
 
     // set the most important attributes
-    Attributes.set(network, node, BIOPAX_URI, element.getUri(), String.class);
-    Attributes.set(network, node, BIOPAX_ENTITY_TYPE, element.getModelInterface().getSimpleName(), String.class);
+    attrs.set(BIOPAX_URI, element.getUri());
+    attrs.set(BIOPAX_ENTITY_TYPE, element.getModelInterface().getSimpleName());
 
-    // traverse to create the rest of attr.
-    bpeAutoMapper.traverse(element, model);
+    // walk the class's property plan to create the rest of attr.
+    TraversalPlan.of(element.getModelInterface()).apply(element, attrs);
 
     // create custom (convenience?) attributes, mainly - from xrefs
-    createExtraXrefAttributes(element, network, node);
+    createExtraXrefAttributes(element, attrs, derived);
 
-    String name = getName(element);
+    String name = derived.name(element);
     if (!(element instanceof Interaction)) {
       if (element instanceof EntityReference //this is for SIF views
         || element instanceof PhysicalEntity
         || element instanceof Gene) {
-        String gs = network.getRow(node, CyNetwork.DEFAULT_ATTRS).get("GENE SYMBOL", String.class);
+        String gs = attrs.get("GENE SYMBOL", String.class);
         if (gs != null) {
           name = gs; //replace other name(s) with the gene symbol(s)
         }
@@ -397,9 +284,9 @@ public class BioPaxMapper {
         List<String> list = chemicalModificationsWrapper.asList();
         if (list != null && !list.isEmpty()) {
           // store chemical modifications to be used by the view details panel, node attribute browser, Quick Find
-          Attributes.set(network, node, BIOPAX_CHEMICAL_MODIFICATIONS_LIST, list, String.class);
+          attrs.set(BIOPAX_CHEMICAL_MODIFICATIONS_LIST, list);
           if (list.contains(PHOSPHORYLATION_SITE)) {
-            Attributes.set(network, node, BIOPAX_ENTITY_TYPE, PROTEIN_PHOSPHORYLATED, String.class);
+            attrs.set(BIOPAX_ENTITY_TYPE, PROTEIN_PHOSPHORYLATED);
             name += " +phos";
           }
         }
@@ -417,7 +304,9 @@ public class BioPaxMapper {
     }
 
     // update the name (also used for node's label and quick find)
-    Attributes.set(network, node, CyNetwork.NAME, name, String.class);
+    attrs.set(CyNetwork.NAME, name);
+
+    return attrs;
   }
 
   public static <T extends Xref> List<ExternalLink> xrefToExternalLinks(BioPAXElement bpe, Class<T> xrefClass) {
@@ -436,7 +325,7 @@ public class BioPaxMapper {
     return new ArrayList<ExternalLink>();
   }
 
-  private static List<ExternalLink> extractXrefs(Collection<? extends Xref> xrefs) {
+  static List<ExternalLink> extractXrefs(Collection<? extends Xref> xrefs) {
     List<ExternalLink> dbList = new ArrayList<ExternalLink>();
 
     for (Xref x : xrefs) {
@@ -479,19 +368,6 @@ public class BioPaxMapper {
     return dbList;
   }
 
-  private static String ihopLinks(BioPAXElement bpe) {
-    List<String> synList = new ArrayList<String>(getSynonyms(bpe));
-    List<ExternalLink> dbList = xrefToExternalLinks(bpe, Xref.class);
-    String htmlLink = null;
-
-    if (!synList.isEmpty() || !dbList.isEmpty()) {
-      htmlLink = ExternalLinkUtil.createIHOPLink(bpe.getModelInterface().getSimpleName(),
-        synList, dbList, getOrganismTaxonomyId(bpe));
-    }
-
-    return htmlLink;
-  }
-
   /**
    * Import BioPAX data into a new in-memory model.
    *
@@ -556,20 +432,16 @@ public class BioPaxMapper {
    */
   public static Object getValue(BioPAXElement bpe, String... properties) {
     for (String property : properties) {
+      MethodHandle getter = PropertyAccessors.get(bpe.getModelInterface(), property);
+      if (getter == null)
+        continue; // this is often OK, as we guess L2 or L3 properties...
       try {
-        Method method = bpe.getModelInterface().getMethod(
-          "get" + property.substring(0, 1).toUpperCase()
-            + property.substring(1).replace('-', '_'));
-        Object invoke = method.invoke(bpe);
+        Object invoke = (Object) getter.invokeExact((Object) bpe);
         if (invoke != null) {
           return invoke;
         }
-//				PropertyEditor editor = SimpleEditorMap.L3
-//					.getEditorForProperty(property, bpe.getModelInterface());
-//				return editor.getValueFromBean(bpe); // is always a Set!
-      } catch (Exception e) {
+      } catch (Throwable e) {
         if (log.isDebugEnabled()) {
-          // this is often OK, as we guess L2 or L3 properties...
           log.debug("Ignore property " + property + " for "
             + bpe.getUri() + ": " + e);
         }
@@ -589,12 +461,11 @@ public class BioPaxMapper {
     Collection<Object> col = new HashSet<Object>();
 
     for (String property : properties) {
+      MethodHandle getter = PropertyAccessors.get(bpe.getModelInterface(), property);
+      if (getter == null)
+        continue;
       try {
-        Method method = bpe.getModelInterface().getMethod(
-          "get" + property.substring(0, 1).toUpperCase()
-            + property.substring(1).replace('-', '_'));
-
-        Object invoke = method.invoke(bpe);
+        Object invoke = (Object) getter.invokeExact((Object) bpe);
         if (invoke != null) {
           // return value can be collection or Object
           if (invoke instanceof Collection) {
@@ -603,7 +474,7 @@ public class BioPaxMapper {
             col.add(invoke);
           }
         }
-      } catch (Exception e) {
+      } catch (Throwable e) {
         if (log.isDebugEnabled()) {
           log.debug("Cannot get value of '" + property + "' for "
             + bpe.getUri() + ": " + e);
@@ -635,16 +506,24 @@ public class BioPaxMapper {
    * @return taxonomyId, or -1, if not available.
    */
   public static int getOrganismTaxonomyId(BioPAXElement bpe) {
+    Object bs = getValue(bpe, "organism");
+    return (bs instanceof BioSource) ? getTaxonomyId((BioSource) bs) : -1;
+  }
+
+  /**
+   * Gets the NCBI Taxonomy ID of the organism.
+   *
+   * @param bs BioSource
+   * @return taxonomyId, or -1, if not available.
+   */
+  static int getTaxonomyId(BioSource bs) {
     int taxonomyId = -1;
 
     try {
-      Object bs = getValue(bpe, "organism");
-      if (bs instanceof BioSource) {
-        Set<Xref> xrefs = ((BioSource) bs).getXref();
-        if (!xrefs.isEmpty()) {
-          Xref tx = xrefs.iterator().next();
-          taxonomyId = Integer.parseInt(tx.getId());
-        }
+      Set<Xref> xrefs = bs.getXref();
+      if (!xrefs.isEmpty()) {
+        Xref tx = xrefs.iterator().next();
+        taxonomyId = Integer.parseInt(tx.getId());
       }
     } catch (Exception e) {
       taxonomyId = -1;
@@ -653,32 +532,6 @@ public class BioPaxMapper {
     return taxonomyId;
   }
 
-  private static <T extends Xref> List<T> getXRefs(BioPAXElement bpe, Class<T> xrefClass,
-                                                   boolean withMembersIfGeneric) {
-    if (bpe instanceof XReferrable) {
-      List<T> erefs = new ArrayList<T>();
-      erefs.addAll(new ClassFilterSet<Xref, T>(((XReferrable) bpe).getXref(), xrefClass));
-      if (bpe instanceof SimplePhysicalEntity &&
-        ((SimplePhysicalEntity) bpe).getEntityReference() != null) {
-        EntityReference entityReference = ((SimplePhysicalEntity) bpe).getEntityReference();
-        erefs.addAll(new ClassFilterSet<Xref, T>(entityReference.getXref(), xrefClass));
-        //add xrefs from all member ERs (though, not going into members' members...)
-        if (withMembersIfGeneric)
-          for (EntityReference memberEntityReference : entityReference.getMemberEntityReference())
-            erefs.addAll(new ClassFilterSet<Xref, T>(memberEntityReference.getXref(), xrefClass));
-      } else if (bpe instanceof EntityReference) {
-        erefs.addAll(new ClassFilterSet<Xref, T>(((EntityReference) bpe).getXref(), xrefClass));
-        //add xrefs from all member ERs (though, not going into members' members...)
-        if (withMembersIfGeneric)
-          for (EntityReference memberEntityReference : ((EntityReference) bpe).getMemberEntityReference())
-            erefs.addAll(new ClassFilterSet<Xref, T>(memberEntityReference.getXref(), xrefClass));
-      }
-
-      return erefs;
-    }
-    return new ArrayList<T>();
-  }
-
   /**
    * Gets the joint set of all known subclasses of the specified BioPAX types.
    *
@@ -785,21 +638,17 @@ public class BioPaxMapper {
   }
 
   /**
-   * Converts a BioPAX Model to the
-   * custom Simple Interactions Format (SIF), where each row
-   * describes an inferred bio interaction using tab-separated columns:
-   * URI1, interaction_type, URI2, data_sources, PMIDs, pathway_names
-   * (the last three columns may contain semicolon-separated multiple values).
+   * Infers binary interactions from a BioPAX Model
+   * (the model gets normalized a little in the process),
+   * searching for different SIF types concurrently
+   * (in this thread and the shared {@link AppExecutors.Lane#BULK} lane).
    *
-   * @param m               biopax model
-   * @param sifTypes        SIF rules/patterns to use
-   * @param sifOutputStream output stream for the SIF entries
-   * @throws IOException when data cannot be written, etc.
+   * @param m        biopax model
+   * @param sifTypes SIF rules/patterns to use
+   * @param threads  max number of patterns searched at the same time (the lane can run fewer)
+   * @return inferred interactions (with their data sources, publications, pathways)
    */
-  public static void convertToCustomSIF(
-    Model m,
-    SIFType[] sifTypes, //SIF rules/patterns to apply/search
-    OutputStream sifOutputStream) throws IOException {
+  public static Set<SIFInteraction> searchSIF(Model m, SIFType[] sifTypes, int threads) {
     //merge interactions with exactly same properties...
     ModelUtils.mergeEquivalentInteractions(m);
     //some extra normalization to get better conversion results
@@ -809,26 +658,63 @@ public class BioPaxMapper {
     }
 
     //convert to binary interactions
+    if (threads <= 1 || sifTypes.length <= 1)
+      return newSIFSearcher(sifTypes).searchSIF(m);
+
+    // search for the types in parallel (the model is not modified from now on):
+    // helpers in the bulk lane and this thread take the types one by one;
+    // this thread then runs the helpers that have not started yet itself (e.g., when the lane is busy)
+    final Queue<SIFType> pending = new ConcurrentLinkedQueue<SIFType>(Arrays.asList(sifTypes));
+    final Queue<Set<SIFInteraction>> found = new ConcurrentLinkedQueue<Set<SIFInteraction>>();
+    final Runnable search = () -> {
+      SIFType sifType;
+      while ((sifType = pending.poll()) != null)
+        found.add(newSIFSearcher(sifType).searchSIF(m));
+    };
+    final List<FutureTask<Void>> helpers = new ArrayList<FutureTask<Void>>();
+    try {
+      for (int i = 1; i < Math.min(threads, sifTypes.length); i++) {
+        FutureTask<Void> helper = new FutureTask<Void>(search, null);
+        helpers.add(helper);
+        try {
+          AppExecutors.executor(AppExecutors.Lane.BULK).execute(helper);
+        } catch (RejectedExecutionException e) {
+          // shut down; this thread runs it
+        }
+      }
+      search.run();
+      for (FutureTask<Void> helper : helpers) {
+        helper.run(); //does nothing if it has started in the lane
+        helper.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("SIF search was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("SIF search failed", e.getCause());
+    } finally {
+      pending.clear(); //the helpers stop after the current search, if this one failed
+    }
+
+    // merge same (source, type, target) interactions found by different searches
+    Map<SIFInteraction, SIFInteraction> merged = new HashMap<SIFInteraction, SIFInteraction>();
+    for (Set<SIFInteraction> result : found) {
+      for (SIFInteraction sif : result) {
+        SIFInteraction existing = merged.get(sif);
+        if (existing != null)
+          existing.mergeWith(sif);
+        else
+          merged.put(sif, sif);
+      }
+    }
+    return new HashSet<SIFInteraction>(merged.values());
+  }
+
+  private static SIFSearcher newSIFSearcher(SIFType... sifTypes) {
     SIFSearcher sifSearcher = new SIFSearcher(new SimpleIDFetcher(), sifTypes);
     //use the PC2 blacklist of ubiquitous small molecules
     sifSearcher.setBlacklist(App.blacklist);
-    Set<SIFInteraction> binaryInts = sifSearcher.searchSIF(m);
-    // write interactions and some of their attributes (publications, datasources, pathways)
-    SIFToText stt = new CustomFormat(
-      OutputColumn.Type.RESOURCE.name(),
-      OutputColumn.Type.PUBMED.name(),
-      OutputColumn.Type.PATHWAY.name()
-    );
-
-    if (!binaryInts.isEmpty()) {
-      List<SIFInteraction> interList = new ArrayList<SIFInteraction>(binaryInts);
-      Collections.sort(interList);
-      OutputStreamWriter writer = new OutputStreamWriter(sifOutputStream);
-//			writer.write("PARTICIPANT_A\tINTERACTION_TYPE\tPARTICIPANT_B\tINTERACTION_DATA_SOURCE\tINTERACTION_PUBMED_ID\tPATHWAY_NAMES");
-      for (SIFInteraction inter : interList)
-        writer.write(stt.convert(inter) + "\n");
-      writer.close();
-    }
+    return sifSearcher;
   }
 
   public CyNetwork createCyNetwork(String networkName, CyRootNetwork rootNetwork) {
@@ -836,17 +722,22 @@ public class BioPaxMapper {
       ? networkFactory.createNetwork()
       : rootNetwork.addSubNetwork();
 
+    // node and edge attributes are written to the tables all at once, in the end
+    final AttributeBuffer attrs = new AttributeBuffer(network);
+
     // First, create nodes for all Entity class objects
-    createEntityNodes(network);
+    createEntityNodes(network, attrs, Collections.<String, CyNode>emptyMap());
 
     // create edges
-    createInteractionEdges(network);
-    createComplexEdges(network);
+    createInteractionEdges(network, attrs);
+    createComplexEdges(network, attrs);
 
     // TODO create pathwayComponent edges (requires pathway nodes)?
 
     // create PE->memberPE edges!
-    createMemberEdges(network);
+    createMemberEdges(network, attrs);
+
+    attrs.flush();
 
     // Finally, set network attributes:
 
@@ -859,7 +750,70 @@ public class BioPaxMapper {
     return network;
   }
 
-  private void createMemberEdges(CyNetwork network) {
+  /**
+   * Adds the BioPAX model to an existing hypergraph network (from BioPAX)
+   * where nodes have the URI attribute: creates nodes and attributes only for the entities
+   * that are not there yet, and edges that are not there yet (also between the existing nodes).
+   *
+   * @param network existing BioPAX hypergraph network
+   * @return what was added
+   */
+  public Merged mergeIntoCyNetwork(CyNetwork network) {
+    // URI index of the current network
+    final Map<String, CyNode> uriToNode = new HashMap<String, CyNode>();
+    for (CyNode node : network.getNodeList()) {
+      String uri = network.getRow(node).get(BIOPAX_URI, String.class);
+      if (uri != null)
+        uriToNode.put(uri, node);
+    }
+
+    final int edgesBefore = network.getEdgeCount();
+    final AttributeBuffer attrs = new AttributeBuffer(network);
+    createEntityNodes(network, attrs, uriToNode);
+    createInteractionEdges(network, attrs);
+    createComplexEdges(network, attrs);
+    createMemberEdges(network, attrs);
+    attrs.flush();
+
+    Set<CyNode> newNodes = new HashSet<CyNode>(bpeToCyNodeMap.values());
+    newNodes.removeAll(existingNodes);
+    return new Merged(newNodes, network.getEdgeCount() - edgesBefore);
+  }
+
+  /**
+   * New nodes and edges added by {@link #mergeIntoCyNetwork(CyNetwork)}.
+   */
+  public static final class Merged {
+    public final Set<CyNode> newNodes;
+    public final int newEdges;
+
+    private Merged(Set<CyNode> newNodes, int newEdges) {
+      this.newNodes = newNodes;
+      this.newEdges = newEdges;
+    }
+
+    public boolean isEmpty() {
+      return newNodes.isEmpty() && newEdges == 0;
+    }
+  }
+
+  // whether there is such edge already (can be only if both nodes were in the network before)
+  private boolean existing(CyNetwork network, AttributeBuffer attrs, CyNode src, CyNode tgt, String type) {
+    if (!existingNodes.contains(src) || !existingNodes.contains(tgt))
+      return false;
+    for (CyEdge edge : network.getConnectingEdgeList(src, tgt, CyEdge.Type.DIRECTED)) {
+      if (edge.getSource() != src)
+        continue;
+      String edgeType = network.getRow(edge).get("interaction", String.class);
+      if (edgeType == null)
+        edgeType = attrs.get(edge, "interaction", String.class); //added by this merge
+      if (type.equals(edgeType))
+        return true;
+    }
+    return false;
+  }
+
+  private void createMemberEdges(CyNetwork network, AttributeBuffer attrs) {
     // for each PE,
     for (PhysicalEntity par : model.getObjects(PhysicalEntity.class)) {
       Set<PhysicalEntity> members = par.getMemberPhysicalEntity();
@@ -871,28 +825,44 @@ public class BioPaxMapper {
       // for each its member PE, add the directed edge 'member' (from parent to member)
       for (PhysicalEntity member : members) {
         CyNode cyMemberNode = bpeToCyNodeMap.get(member);
+        if (existing(network, attrs, cyParentNode, cyMemberNode, "member"))
+          continue;
         CyEdge edge = network.addEdge(cyParentNode, cyMemberNode, true);
-        Attributes.set(network, edge, "interaction", "member", String.class);
+        attrs.set(edge, "interaction", "member", String.class);
       }
     }
   }
 
-  private void createEntityNodes(CyNetwork network) {
-    Set<Entity> entities = model.getObjects(Entity.class);
-    for (Entity bpe : entities) {
+  private void createEntityNodes(CyNetwork network, AttributeBuffer attrs, Map<String, CyNode> uriToNode) {
+    List<Entity> entities = new ArrayList<Entity>();
+    for (Entity bpe : model.getObjects(Entity.class)) {
       // do not make nodes for top/main pathways
       if (bpe instanceof Pathway) {
         if (bpe.getParticipantOf().isEmpty()
           && ((Process) bpe).getPathwayComponentOf().isEmpty())
           continue;
       }
+      // re-use existing nodes (when extending a network)
+      CyNode node = uriToNode.get(bpe.getUri());
+      if (node != null) {
+        bpeToCyNodeMap.put(bpe, node);
+        existingNodes.add(node);
+        continue;
+      }
+      entities.add(bpe);
+    }
+
+    // first, compute the attributes of all entities using all cores (read-only model access)
+    List<AttributeRecord> records = entities.parallelStream()
+      .map(bpe -> computeAttributes(bpe, model, derived))
+      .collect(Collectors.toList());
 
+    // then, create the nodes and add the attributes (in this thread)
+    for (int i = 0; i < entities.size(); i++) {
       //  Create node symbolizing the interaction
       CyNode node = network.addNode();
-      bpeToCyNodeMap.put(bpe, node);
-
-      // traverse
-      createAttributesFromProperties(bpe, model, node, network);
+      bpeToCyNodeMap.put(entities.get(i), node);
+      records.get(i).writeTo(attrs, node);
     }
 
     if (log.isDebugEnabled())
@@ -900,28 +870,28 @@ public class BioPaxMapper {
         + "" + network.getNodeList().size() + " nodes created.");
   }
 
-  private void createInteractionEdges(CyNetwork network) {
+  private void createInteractionEdges(CyNetwork network, AttributeBuffer attrs) {
     Collection<Interaction> interactionList = model.getObjects(Interaction.class);
     for (Interaction itr : interactionList) {
       log.trace("Mapping " + itr.getModelInterface().getSimpleName() + " edges : " + itr.getUri());
       // convert each disjoint sub-class (of Interaction)
       if (itr instanceof Conversion) {
-        addConversionInteraction(network, (Conversion) itr);
+        addConversionInteraction(network, attrs, (Conversion) itr);
       } else if (itr instanceof Control) {
-        addControlInteraction(network, (Control) itr);
+        addControlInteraction(network, attrs, (Control) itr);
       } else if (itr instanceof MolecularInteraction) {
-        addPhysicalInteraction(network, (MolecularInteraction) itr);
+        addPhysicalInteraction(network, attrs, (MolecularInteraction) itr);
       } else if (itr instanceof GeneticInteraction) {
-        addGeneticInteraction(network, (GeneticInteraction) itr);
+        addGeneticInteraction(network, attrs, (GeneticInteraction) itr);
       } else if (itr instanceof TemplateReaction) {
-        addTemplateReaction(network, (TemplateReaction) itr);
+        addTemplateReaction(network, attrs, (TemplateReaction) itr);
       } else { //never
         throw new IllegalArgumentException("Bug: impossible itr type: " + itr.getModelInterface().getSimpleName());
       }
     }
   }
 
-  private void createComplexEdges(CyNetwork network) {
+  private void createComplexEdges(CyNetwork network, AttributeBuffer attrs) {
     // iterate through all pe's
     for (Complex complexElement : model.getObjects(Complex.class)) {
       Set<PhysicalEntity> members = complexElement.getComponent();
@@ -934,9 +904,11 @@ public class BioPaxMapper {
       // get all components. There can be 0 or more
       for (PhysicalEntity member : members) {
         CyNode complexMemberCyNode = bpeToCyNodeMap.get(member);
+        if (existing(network, attrs, complexCyNode, complexMemberCyNode, "contains"))
+          continue;
         // create edge, set attributes
         CyEdge edge = network.addEdge(complexCyNode, complexMemberCyNode, true);
-        Attributes.set(network, edge, "interaction", "contains", String.class);
+        attrs.set(edge, "interaction", "contains", String.class);
       }
     }
   }
@@ -944,61 +916,61 @@ public class BioPaxMapper {
   /*
    * Adds a Physical Interaction (binding) between two proteins.
    */
-  private void addPhysicalInteraction(CyNetwork network, MolecularInteraction interaction) {
+  private void addPhysicalInteraction(CyNetwork network, AttributeBuffer attrs, MolecularInteraction interaction) {
     Collection<Entity> participants = interaction.getParticipant();
     for (Entity e : participants) {
-      linkNodes(network, e, interaction, "participant"); //like 'left'
+      linkNodes(network, attrs, e, interaction, "participant"); //like 'left'
     }
   }
 
-  private void addGeneticInteraction(CyNetwork network, GeneticInteraction interaction) {
+  private void addGeneticInteraction(CyNetwork network, AttributeBuffer attrs, GeneticInteraction interaction) {
     Collection<Entity> participants = interaction.getParticipant();
     for (Entity e : participants) {
-      linkNodes(network, e, interaction, "participant"); //like 'left'
+      linkNodes(network, attrs, e, interaction, "participant"); //like 'left'
     }
   }
 
   /*
    * Adds a Conversion Interaction.
    */
-  private void addConversionInteraction(CyNetwork network, Conversion conversion) {
+  private void addConversionInteraction(CyNetwork network, AttributeBuffer attrs, Conversion conversion) {
     //Left Side
     Collection<PhysicalEntity> leftSideElements = conversion.getLeft();
     for (PhysicalEntity e : leftSideElements) {
-      linkNodes(network, e, conversion, "left");
+      linkNodes(network, attrs, e, conversion, "left");
     }
     //Right Side
     Collection<PhysicalEntity> rightSideElements = conversion.getRight();
     for (PhysicalEntity e : rightSideElements) {
-      linkNodes(network, conversion, e, "right");
+      linkNodes(network, attrs, conversion, e, "right");
     }
   }
 
-  private void addTemplateReaction(CyNetwork network, TemplateReaction templateReaction) {
+  private void addTemplateReaction(CyNetwork network, AttributeBuffer attrs, TemplateReaction templateReaction) {
     //to fix an invalid biopax models, lets save all participants first...
     Collection<Entity> participants = new HashSet<>(templateReaction.getParticipant());
     //process 'template' property (can be null/empty in some data)
     NucleicAcid template = templateReaction.getTemplate();
     if (template != null) {
-      linkNodes(network, template, templateReaction, "template");
+      linkNodes(network, attrs, template, templateReaction, "template");
       participants.remove(template);
     }
     // process product(s)
     Collection<PhysicalEntity> products = templateReaction.getProduct();
     for (PhysicalEntity e : products) {
-      linkNodes(network, templateReaction, e, "product");
+      linkNodes(network, attrs, templateReaction, e, "product");
       participants.remove(e);
     }
     //finally, let's link the rest participants, if any, with 'participant' edge type
     for (Entity e : participants) {
-      linkNodes(network, e, templateReaction, "participant");
+      linkNodes(network, attrs, e, templateReaction, "participant");
     }
   }
 
   /*
    * Add directed edge two nodes.
    */
-  private void linkNodes(CyNetwork network, BioPAXElement src, BioPAXElement tgt, String type) {
+  private void linkNodes(CyNetwork network, AttributeBuffer attrs, BioPAXElement src, BioPAXElement tgt, String type) {
     // Note: getCyNode also assigns cellular location attribute...
     CyNode srcNode = bpeToCyNodeMap.get(src);
     if (srcNode == null) {
@@ -1012,36 +984,39 @@ public class BioPaxMapper {
       return;
     }
 
+    if (existing(network, attrs, srcNode, tgtNode, type))
+      return;
+
     CyEdge edge = null;
-    String a = getName(src);
-    String b = getName(tgt);
+    String a = derived.name(src);
+    String b = derived.name(tgt);
     edge = network.addEdge(srcNode, tgtNode, true);
-    Attributes.set(network, edge, CyNetwork.NAME, a + type + b, String.class);
-    Attributes.set(network, edge, "interaction", type, String.class);
+    attrs.set(edge, CyNetwork.NAME, a + type + b, String.class);
+    attrs.set(edge, "interaction", type, String.class);
   }
 
   /*
    * Adds a BioPAX Control Interaction.
    */
-  private void addControlInteraction(CyNetwork network, Control control) {
+  private void addControlInteraction(CyNetwork network, AttributeBuffer attrs, Control control) {
     Collection<Process> controlledList = control.getControlled();
     for (Process process : controlledList) {
       // Determine the BioPAX Edge Type
       ControlType cType = control.getControlType(); //e.g., ACTIVATION
       String typeStr = (cType == null) ? "controlled" : cType.toString();
-      linkNodes(network, control, process, typeStr); //from Control to controlled process (like 'right')
+      linkNodes(network, attrs, control, process, typeStr); //from Control to controlled process (like 'right')
     }
 
     Collection<Controller> controllerList = control.getController();
     for (Controller controller : controllerList) {
-      linkNodes(network, controller, control, "controller"); //like 'left'
+      linkNodes(network, attrs, controller, control, "controller"); //like 'left'
     }
 
     // cofactor
     if (control instanceof Catalysis) {
       Collection<PhysicalEntity> coFactors = ((Catalysis) control).getCofactor();
       for (PhysicalEntity e : coFactors) {
-        linkNodes(network, e, control, "cofactor"); //like 'left'
+        linkNodes(network, attrs, e, control, "cofactor"); //like 'left'
       }
     }
   }
@@ -6,6 +6,7 @@ import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.Entity;
 import org.biopax.paxtools.model.level3.EntityReference;
 import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.biopax.paxtools.pattern.miner.SIFInteraction;
 import org.biopax.paxtools.pattern.miner.SIFType;
 import org.cytoscape.application.NetworkViewRenderer;
 import org.cytoscape.io.read.CyNetworkReader;
@@ -18,14 +19,15 @@ import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.ProvidesTitle;
 import org.cytoscape.work.TaskMonitor;
 import org.cytoscape.work.Tunable;
+import org.cytoscape.work.util.BoundedInteger;
 import org.cytoscape.work.util.ListMultipleSelection;
 import org.cytoscape.work.util.ListSingleSelection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 
 /**
@@ -43,6 +45,8 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
     "<ul><li><strong>Hypergraph</strong>: map biopax entities and interactions to nodes; properties " +
     "- to edges and table attributes;</li>" +
     "<li><strong>Binary (SIF)</strong>: convert the BioPAX to SIF model and table attributes;</li>" +
+    "<li><strong>Hypergraph (streaming)</strong>: same nodes and edges as Hypergraph, built while reading " +
+    "(BioPAX Level3 only; for very large data; fewer node attributes);</li>" +
     "</ul></html>", gravity = 500)
   public ListSingleSelection<ReaderMode> readerMode;
   @Tunable(description = "Parent Network:", groups = {"Options"},
@@ -56,8 +60,17 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
     tooltip = "Select interaction types to infer from the BioPAX result",
     gravity = 703, dependsOn = "readerMode=Binary")
   public ListMultipleSelection<SIFType> sifSelection;
+  //how many of the selected patterns to search for at the same time
+  @Tunable(description = "Pattern Search Threads:", groups = {"Options"},
+    tooltip = "Max number of BioPAX patterns to search for concurrently",
+    gravity = 704, dependsOn = "readerMode=Binary")
+  public BoundedInteger sifThreads;
+  // opens the data when the task runs (after the options are set); can return null - no data
+  private final Callable<InputStream> data;
   private InputStream stream;
+  private boolean noData;
   private String inputName;
+  private final String snapshotKey;
   private CyRootNetwork rootNetwork;
 
   /**
@@ -67,9 +80,24 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
    * @param inputName a file or pathway name (can be later updated using actual data)
    */
   public BioPaxReaderTask(InputStream stream, String inputName) {
+    this(() -> stream, inputName, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param data        opens the input biopax stream (or returns null when there's no data),
+   *                    only when the task runs
+   * @param inputName   a file or pathway name (can be later updated using actual data)
+   * @param snapshotKey what identifies the data, to save/load the model snapshot
+   *                    (see {@link ModelSnapshots#fileKey}, {@link ModelSnapshots#contentKey});
+   *                    null - the data are always parsed
+   */
+  BioPaxReaderTask(Callable<InputStream> data, String inputName, String snapshotKey) {
     this.networks = new HashSet<>();
-    this.stream = stream;
+    this.data = data;
     this.inputName = inputName;
+    this.snapshotKey = snapshotKey;
 
     // initialize the root networks Collection
     nameToRootNetworkMap = new HashMap<>();
@@ -97,6 +125,8 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
       SIFEnum.CONTROLS_STATE_CHANGE_OF,
       SIFEnum.IN_COMPLEX_WITH);
     sifSelection.setSelectedValues(values);
+    final int cores = Runtime.getRuntime().availableProcessors();
+    sifThreads = new BoundedInteger(1, Math.min(4, cores), Math.max(cores, 1), false, false);
 
     // initialize renderer list
     final List<NetworkViewRenderer> renderers = new ArrayList<>();
@@ -110,6 +140,22 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
     rendererList = new ListSingleSelection<>(renderers);
   }
 
+  // done reading; when the data were parsed, reads the rest (so that a query cache stream
+  // stores the complete result), otherwise the download, if any, is aborted; once
+  private void closeStream(boolean parsed) {
+    if (stream == null)
+      return;
+    try {
+      if (parsed)
+        QueryStreams.drain(stream);
+      stream.close();
+    } catch (IOException e) {
+      log.warn("Failed to close the BioPAX input stream", e);
+    } finally {
+      stream = null;
+    }
+  }
+
   @ProvidesTitle()
   public String tunableDialogTitle() {
     return "Cy Network and View from Pathway Commons query";
@@ -122,26 +168,84 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
 
     if (cancelled) return;
 
-    // import BioPAX data into a new in-memory model
+    //set parent/root network (can be null - add a new networks group)
+    rootNetwork = nameToRootNetworkMap.get(rootNetworkSelection.getSelectedValue());
+
+    try {
+      read(taskMonitor);
+    } finally {
+      closeStream(false); //if not done yet (failed or cancelled)
+    }
+  }
+
+  // opens the data now (e.g., sends the query), not while the options dialog is shown; null - no data
+  private InputStream openStream(TaskMonitor taskMonitor) throws Exception {
+    taskMonitor.setStatusMessage("Getting the BioPAX data...");
+    stream = data.call();
+    noData = (stream == null);
+    return stream;
+  }
+
+  private void read(TaskMonitor taskMonitor) throws Exception {
+    if (readerMode.getSelectedValue() == ReaderMode.STREAMING) {
+      if (openStream(taskMonitor) == null) {
+        taskMonitor.setStatusMessage("No data returned.");
+        return;
+      }
+      if (cancelled) return;
+      // map directly from the stream (no in-memory BioPAX model)
+      taskMonitor.setStatusMessage("Streaming BioPAX data to CyNetwork...");
+      CyNetwork network = (rootNetwork == null)
+        ? App.cyServices.networkFactory.createNetwork()
+        : rootNetwork.addSubNetwork();
+      BioPaxStreamMapper streamMapper = new BioPaxStreamMapper(network);
+      try {
+        streamMapper.map(stream, taskMonitor);
+      } catch (Throwable e) {
+        throw new RuntimeException("BioPAX reader failed to stream the data " +
+          "(check the data for syntax errors) - " + e);
+      }
+      closeStream(true);
+      if (network.getNodeCount() == 0)
+        throw new RuntimeException("Pathway is empty. Please check the BioPAX source file.");
+      Attributes.set(network, network, CyNetwork.NAME, getNetworkName(streamMapper.getName()), String.class);
+      Attributes.set(network, network, "quickfind.default_index", CyNetwork.NAME, String.class);
+      Attributes.set(network, network, BioPaxMapper.BIOPAX_NETWORK,
+        BiopaxVisualStyleUtil.BIO_PAX_VISUAL_STYLE, String.class);
+      networks.add(network);
+      return;
+    }
+
+    // import BioPAX data into a new in-memory model (or load its binary snapshot; then the data are not opened)
     Model model = null;
+    ModelSnapshots.Result snapshot = null;
     try {
-      model = BioPaxMapper.read(stream);
+      if (App.modelSnapshots != null) {
+        snapshot = App.modelSnapshots.read(snapshotKey, () -> openStream(taskMonitor));
+        model = snapshot.model;
+      } else if (openStream(taskMonitor) != null) {
+        model = BioPaxMapper.read(stream);
+      }
     } catch (Throwable e) {
       throw new RuntimeException("BioPAX reader failed to build a BioPAX model " +
         "(check the data for syntax errors) - " + e);
+    } finally {
+      closeStream(model != null);
     }
 
+    if (noData) {
+      taskMonitor.setStatusMessage("No data returned.");
+      return;
+    }
     if (model == null) {
       throw new RuntimeException("BioPAX reader did not find any BioPAX data there.");
     }
+    if (cancelled) return;
 
-    final String networkName = getNetworkName(model);
+    final String networkName = getNetworkName(BioPaxMapper.getName(model));
     String msg = "New model contains " + model.getObjects().size() + " BioPAX elements";
     taskMonitor.setStatusMessage(msg);
 
-    //set parent/root network (can be null - add a new networks group)
-    rootNetwork = nameToRootNetworkMap.get(rootNetworkSelection.getSelectedValue());
-
     final BioPaxMapper mapper = new BioPaxMapper(model, App.cyServices.networkFactory);
 
     ReaderMode selectedMode = readerMode.getSelectedValue();
@@ -149,6 +253,9 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
       case HYPERGRAPH:
         // Map BioPAX Data to Cytoscape Nodes/Edges (run as task)
         taskMonitor.setStatusMessage("Mapping BioPAX model to CyNetwork...");
+        // the mapper does not modify the model; its new snapshot is written meanwhile
+        if (snapshot != null)
+          snapshot.save();
         CyNetwork network = mapper.createCyNetwork(networkName, rootNetwork);
         if (network.getNodeCount() == 0)
           throw new RuntimeException("Pathway is empty. Please check the BioPAX source file.");
@@ -161,27 +268,23 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
         break;
 
       case BINARY:
-        //convert BioPAX to the custom binary SIF format (using a tmp file)
+        //infer binary interactions (SIF) from the BioPAX model
         taskMonitor.setStatusMessage("Mapping BioPAX model to SIF, then to CyNetwork...");
-        final File tmpSifFile = File.createTempFile("tmp_biopax2sif", ".sif");
-        tmpSifFile.deleteOnExit();
-        BioPaxMapper.convertToCustomSIF(model,
-          sifSelection.getSelectedValues().toArray(new SIFType[]{}),
-          new FileOutputStream(tmpSifFile));
+        // the SIF search normalizes (modifies) the model right away, so no new snapshot is saved
+        // (waiting for it would delay the import; a snapshot saved by a Hypergraph import is still used)
+        Set<SIFInteraction> sifInteractions = BioPaxMapper.searchSIF(model,
+          sifSelection.getSelectedValues().toArray(new SIFType[]{}), sifThreads.getValue());
 
         // create a new CyNetwork
         CyNetwork net = (rootNetwork == null)
           ? App.cyServices.networkFactory.createNetwork()
           : rootNetwork.addSubNetwork();
 
-        // line-by-line parse the custom SIF file (- create nodes, edges and edge attributes)
+        // create nodes, edges and edge attributes directly from the interactions
         CustomSifParser customSifParser = new CustomSifParser(net, App.cyServices);
-        BufferedReader reader = Files.newBufferedReader(tmpSifFile.toPath());
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-          customSifParser.parse(line);
+        for (SIFInteraction sifInteraction : sifInteractions) {
+          customSifParser.parse(sifInteraction);
         }
-        reader.close();
 
         // create node attributes from the BioPAX properties
         createSifNodeAttr(model, net, taskMonitor);
@@ -210,23 +313,25 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
     if (cancelled) return;
 
     // Set node attributes from the Biopax Model
+    AttributeBuffer attrs = new AttributeBuffer(cyNetwork);
+    DerivedData derived = new DerivedData();
     for (CyNode node : cyNetwork.getNodeList()) {
       String uri = cyNetwork.getRow(node).get(CyNetwork.NAME, String.class);
       BioPAXElement e = model.getByID(uri);
       if (e instanceof EntityReference || e instanceof Entity) {
-        BioPaxMapper.createAttributesFromProperties(e, model, node, cyNetwork);
+        BioPaxMapper.createAttributesFromProperties(e, model, node, attrs, derived);
       } else if (e != null) {
         log.warn("SIF network has an unexpected node: " + uri + " of type " + e.getModelInterface());
-        BioPaxMapper.createAttributesFromProperties(e, model, node, cyNetwork);
+        BioPaxMapper.createAttributesFromProperties(e, model, node, attrs, derived);
       } else { //should never happen anymore...
         log.error("(BUG) the biopax model does not have an object with URI=" + uri);
       }
     }
+    attrs.flush();
   }
 
-  private String getNetworkName(Model model) {
+  private String getNetworkName(String name) {
     // make a network name from pathway name(s) or the file name
-    String name = BioPaxMapper.getName(model);
 
     if (name == null || name.trim().isEmpty()) {
       name = (inputName == null || inputName.trim().isEmpty())
@@ -291,7 +396,14 @@ public class BioPaxReaderTask extends AbstractTask implements CyNetworkReader {
      * first, it converts BioPAX to SIF (using Paxtools library); next,
      * delegates network/view creation to the first available SIF anotherReader.
      */
-    BINARY("Binary");
+    BINARY("Binary"),
+
+    /**
+     * Hypergraph mapping done while reading the BioPAX L3 RDF/XML stream,
+     * without the in-memory BioPAX model (for very large data);
+     * only the entity's own properties become node attributes.
+     */
+    STREAMING("Hypergraph (streaming)");
 
     private final String name;
 
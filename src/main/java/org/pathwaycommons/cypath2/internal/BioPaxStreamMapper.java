@@ -0,0 +1,434 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.level3.*;
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.work.TaskMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Maps BioPAX Level3 RDF/XML to a Cytoscape network (hypergraph)
+ * directly from the XML stream, without building a paxtools Model first.
+ * <p>
+ * Nodes are created as soon as an entity element is closed; edges that refer
+ * to not yet seen elements are kept pending until the other end appears.
+ * Only the entity's own properties become node attributes (no xref-based
+ * or nested utility class attributes, which require the whole model).
+ */
+final class BioPaxStreamMapper {
+
+  private static final Logger log = LoggerFactory.getLogger(BioPaxStreamMapper.class);
+
+  private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+  private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+  private final CyNetwork network;
+  private final AttributeBuffer attrs;
+
+  private final Map<String, CyNode> nodes = new HashMap<>();
+  private final Map<CyNode, NodeInfo> nodeInfos = new LinkedHashMap<>();
+  // edges waiting for a node (the key) which has not been read yet
+  private final Map<String, List<String[]>> pendingEdges = new HashMap<>();
+  // pathway nodes are made at the end, and only for non-root pathways
+  private final Map<String, Frame> pathways = new LinkedHashMap<>();
+  // entities referenced before they were read (others are marked in their NodeInfo)
+  private final Set<String> referencedProcesses = new HashSet<>();
+  // what's needed to finalize the node names
+  private final Map<String, String> entityReferenceNames = new HashMap<>();
+  private final Map<String, String> locationTerms = new HashMap<>();
+  private final List<CyEdge> namedEdges = new ArrayList<>();
+
+  private String xmlBase = "";
+  private String name;
+
+  BioPaxStreamMapper(CyNetwork network) {
+    this.network = network;
+    this.attrs = new AttributeBuffer(network);
+  }
+
+  /**
+   * Reads the BioPAX L3 RDF/XML stream and creates nodes, edges and attributes.
+   *
+   * @param in          BioPAX RDF/XML stream
+   * @param taskMonitor progress monitor (can be null)
+   * @throws XMLStreamException when the data is not well-formed XML
+   */
+  void map(InputStream in, TaskMonitor taskMonitor) throws XMLStreamException {
+    // instantiated directly to avoid the StAX service lookup (fails in OSGi)
+    XMLInputFactory factory = new com.ctc.wstx.stax.WstxInputFactory();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    XMLStreamReader r = factory.createXMLStreamReader(in);
+    try {
+      parse(r, taskMonitor);
+    } finally {
+      r.close();
+    }
+    complete();
+    log.info("Streamed " + network.getNodeCount() + " nodes and "
+      + network.getEdgeCount() + " edges");
+  }
+
+  /**
+   * Gets the name made from the root pathways' names, or else the root interactions' names,
+   * or xml:base (as {@link BioPaxMapper#getName(org.biopax.paxtools.model.Model)} does).
+   *
+   * @return name
+   */
+  String getName() {
+    return name;
+  }
+
+  private void parse(XMLStreamReader r, TaskMonitor taskMonitor) throws XMLStreamException {
+    final Deque<Frame> objects = new ArrayDeque<>();
+    final StringBuilder text = new StringBuilder();
+    String property = null; //currently open property element of the top object
+    int skip = 0;
+    int reported = 0;
+
+    while (r.hasNext()) {
+      final int event = r.next();
+      if (skip > 0) {
+        if (event == XMLStreamConstants.START_ELEMENT)
+          skip++;
+        else if (event == XMLStreamConstants.END_ELEMENT)
+          skip--;
+        continue;
+      }
+
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+          if (objects.isEmpty() && property == null
+            && RDF_NS.equals(r.getNamespaceURI()) && "RDF".equals(r.getLocalName())) {
+            String base = r.getAttributeValue(XML_NS, "base");
+            if (base != null)
+              xmlBase = base;
+          } else if (objects.isEmpty() || property != null) {
+            Frame f = startObject(r, property);
+            if (f == null) {
+              skip = 1; //not a BioPAX object (e.g., owl:Ontology)
+            } else {
+              objects.push(f);
+              property = null;
+            }
+          } else {
+            property = r.getLocalName();
+            text.setLength(0);
+            String resource = r.getAttributeValue(RDF_NS, "resource");
+            if (resource != null) {
+              objects.peek().addReference(property, resolve(resource));
+              property = null;
+              skip = 1; //skip to (and including) this empty element's end tag
+            }
+          }
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          if (property != null)
+            text.append(r.getText());
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          if (property != null) {
+            String value = text.toString().trim();
+            if (!value.isEmpty())
+              objects.peek().addValue(property, value);
+            property = null;
+          } else if (!objects.isEmpty()) {
+            Frame f = objects.pop();
+            finish(f);
+            if (f.parentProperty != null) {
+              //back into the parent's property element, which refers to the nested object
+              property = f.parentProperty;
+              objects.peek().addReference(property, f.uri);
+              text.setLength(0);
+            }
+            if (taskMonitor != null && nodes.size() >= reported + 10000) {
+              reported = nodes.size();
+              taskMonitor.setStatusMessage("Created " + reported + " nodes...");
+            }
+          }
+          break;
+
+        default:
+          break;
+      }
+    }
+  }
+
+  private Frame startObject(XMLStreamReader r, String parentProperty) {
+    final String ns = r.getNamespaceURI();
+    if (BioPAXLevel.L2.getNameSpace().equals(ns))
+      throw new IllegalArgumentException("BioPAX Level2 data cannot be streamed; " +
+        "use the regular (in-memory) Hypergraph mode");
+    if (!BioPAXLevel.L3.getNameSpace().equals(ns))
+      return null;
+
+    final Class<? extends BioPAXElement> type;
+    try {
+      type = BioPAXLevel.L3.getInterfaceForName(r.getLocalName());
+    } catch (Throwable e) {
+      log.warn("Skipping unknown BioPAX type: " + r.getLocalName());
+      return null;
+    }
+
+    String uri = r.getAttributeValue(RDF_NS, "about");
+    if (uri == null) {
+      String id = r.getAttributeValue(RDF_NS, "ID");
+      uri = (id == null) ? null : xmlBase + id;
+    } else {
+      uri = resolve(uri);
+    }
+    if (uri == null) {
+      log.warn("Skipping a " + type.getSimpleName() + " that has no rdf:about or rdf:ID");
+      return null;
+    }
+
+    return new Frame(uri, type, parentProperty);
+  }
+
+  private String resolve(String uri) {
+    return (uri.startsWith("#")) ? xmlBase + uri.substring(1) : uri;
+  }
+
+  private void finish(Frame f) {
+    if (Pathway.class.isAssignableFrom(f.type)) {
+      pathways.put(f.uri, f);
+    } else if (Entity.class.isAssignableFrom(f.type)) {
+      createNode(f);
+    } else if (EntityReference.class.isAssignableFrom(f.type)) {
+      String erName = f.displayName();
+      if (erName != null)
+        entityReferenceNames.put(f.uri, erName);
+    } else if (CellularLocationVocabulary.class.isAssignableFrom(f.type)) {
+      List<String> terms = f.values.get("term");
+      if (terms != null)
+        locationTerms.put(f.uri, terms.get(0));
+    }
+    //other utility class objects are not used further
+  }
+
+  private void createNode(Frame f) {
+    CyNode node = network.addNode();
+    nodes.put(f.uri, node);
+
+    attrs.set(node, BioPaxMapper.BIOPAX_URI, f.uri, String.class);
+    attrs.set(node, BioPaxMapper.BIOPAX_ENTITY_TYPE, f.type.getSimpleName(), String.class);
+    for (Map.Entry<String, List<String>> e : f.values.entrySet()) {
+      if ("name".equals(e.getKey()))
+        continue;
+      PropertyEditor editor = SimpleEditorMap.L3.getEditorForProperty(e.getKey(), f.type);
+      if (editor != null && editor.isMultipleCardinality())
+        attrs.set(node, e.getKey(), e.getValue(), String.class);
+      else
+        attrs.set(node, e.getKey(), e.getValue().get(0), String.class);
+    }
+
+    NodeInfo info = new NodeInfo(f);
+    nodeInfos.put(node, info);
+
+    for (String[] ref : f.links)
+      link(f, ref[0], ref[1]);
+
+    //connect previously read elements that refer to this one
+    List<String[]> waiting = pendingEdges.remove(f.uri);
+    if (waiting != null) {
+      for (String[] edge : waiting)
+        addEdge(edge[0], edge[1], edge[2]);
+    }
+  }
+
+  /*
+   * Maps an entity-range property value to an edge the same way BioPaxMapper does.
+   */
+  private void link(Frame f, String property, String target) {
+    switch (property) {
+      case "left":
+      case "controller":
+      case "cofactor":
+      case "template":
+      case "participant":
+        addEdge(target, f.uri, property);
+        break;
+      case "right":
+      case "product":
+        addEdge(f.uri, target, property);
+        break;
+      case "controlled":
+        List<String> controlType = f.values.get("controlType");
+        addEdge(f.uri, target, (controlType == null) ? "controlled" : controlType.get(0));
+        break;
+      case "component":
+        addEdge(f.uri, target, "contains");
+        break;
+      case "memberPhysicalEntity":
+        addEdge(f.uri, target, "member");
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void addEdge(String src, String tgt, String type) {
+    CyNode srcNode = nodes.get(src);
+    CyNode tgtNode = nodes.get(tgt);
+    if (srcNode == null || tgtNode == null) {
+      String missing = (srcNode == null) ? src : tgt;
+      pendingEdges.computeIfAbsent(missing, k -> new ArrayList<>()).add(new String[]{src, tgt, type});
+      return;
+    }
+
+    CyEdge edge = network.addEdge(srcNode, tgtNode, true);
+    attrs.set(edge, "interaction", type, String.class);
+    if (!"contains".equals(type) && !"member".equals(type))
+      namedEdges.add(edge);
+  }
+
+  /*
+   * Creates nodes for the non-root pathways, drops dangling edges,
+   * and sets the node and edge names.
+   */
+  private void complete() {
+    StringBuilder sb = new StringBuilder();
+    for (Frame pw : pathways.values()) {
+      if (referencedProcesses.contains(pw.uri)) {
+        createNode(pw);
+      } else {
+        String pwName = pw.displayName();
+        sb.append(" ").append((pwName == null) ? pw.type.getSimpleName() : StringEscapeUtils.unescapeHtml4(pwName));
+      }
+    }
+    if (sb.length() == 0) {
+      for (NodeInfo info : nodeInfos.values()) {
+        if (info.interaction && !info.referenced && !referencedProcesses.contains(info.uri))
+          sb.append(" ").append((info.name == null) ? info.type : StringEscapeUtils.unescapeHtml4(info.name));
+      }
+    }
+    name = (sb.length() == 0) ? xmlBase : sb.toString().trim();
+
+    if (!pendingEdges.isEmpty())
+      log.debug("No nodes were created for " + pendingEdges.size() + " referenced entities");
+
+    for (Map.Entry<CyNode, NodeInfo> e : nodeInfos.entrySet()) {
+      NodeInfo info = e.getValue();
+      if (info.name == null && info.entityReference != null)
+        info.name = entityReferenceNames.get(info.entityReference);
+      String nodeName = (info.name == null) ? info.type : StringEscapeUtils.unescapeHtml4(info.name);
+      info.name = nodeName;
+      if (info.location != null && locationTerms.containsKey(info.location))
+        nodeName += " (" + locationTerms.get(info.location).toLowerCase() + ")";
+      attrs.set(e.getKey(), CyNetwork.NAME, nodeName, String.class);
+    }
+
+    for (CyEdge edge : namedEdges) {
+      String a = nodeInfos.get(edge.getSource()).name;
+      String b = nodeInfos.get(edge.getTarget()).name;
+      String type = attrs.get(edge, "interaction", String.class);
+      attrs.set(edge, CyNetwork.NAME, a + type + b, String.class);
+    }
+
+    attrs.flush();
+  }
+
+  /*
+   * Properties of a BioPAX element that is being read.
+   */
+  private final class Frame {
+    final String uri;
+    final Class<? extends BioPAXElement> type;
+    final String parentProperty;
+    final Map<String, List<String>> values = new LinkedHashMap<>();
+    final List<String[]> links = new ArrayList<>();
+
+    Frame(String uri, Class<? extends BioPAXElement> type, String parentProperty) {
+      this.uri = uri;
+      this.type = type;
+      this.parentProperty = parentProperty;
+    }
+
+    void addValue(String property, String value) {
+      List<String> vals = values.computeIfAbsent(property, k -> new ArrayList<>(1));
+      if (!vals.contains(value))
+        vals.add(value);
+    }
+
+    void addReference(String property, String target) {
+      PropertyEditor editor = SimpleEditorMap.L3.getEditorForProperty(property, type);
+      if (!(editor instanceof ObjectPropertyEditor)) {
+        if (editor != null)
+          addValue(property, target);
+        return;
+      }
+
+      Class<?> range = editor.getRange();
+      if (Entity.class.isAssignableFrom(range)) {
+        if (!"pathwayComponent".equals(property))
+          links.add(new String[]{property, target});
+        CyNode node = nodes.get(target);
+        if (node != null)
+          nodeInfos.get(node).referenced = true; //not a root interaction
+        else
+          referencedProcesses.add(target); //(pathways and interactions are looked up there)
+      } else if (!Stoichiometry.class.isAssignableFrom(range) && !"nextStep".equals(property)) {
+        addValue(property, target);
+      }
+    }
+
+    String displayName() {
+      List<String> dn = values.get("displayName");
+      if (dn != null)
+        return dn.get(0);
+      List<String> sn = values.get("standardName");
+      if (sn != null)
+        return sn.get(0);
+      List<String> names = values.get("name");
+      if (names == null)
+        return null;
+      String shortest = names.get(0);
+      for (String n : names)
+        if (n.length() < shortest.length())
+          shortest = n;
+      return shortest;
+    }
+  }
+
+  /*
+   * What's kept of an entity after its node is created (to set the name in the end).
+   */
+  private static final class NodeInfo {
+    final String uri;
+    final String type;
+    final boolean interaction;
+    final String location;
+    final String entityReference;
+    String name;
+    // whether another element refers to this one
+    boolean referenced;
+
+    NodeInfo(Frame f) {
+      this.uri = f.uri;
+      this.type = f.type.getSimpleName();
+      this.interaction = Interaction.class.isAssignableFrom(f.type);
+      this.name = f.displayName();
+      List<String> cl = f.values.get("cellularLocation");
+      this.location = (cl != null && PhysicalEntity.class.isAssignableFrom(f.type)) ? cl.get(0) : null;
+      List<String> er = f.values.get("entityReference");
+      this.entityReference = (er != null) ? er.get(0) : null;
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchResponse;
+import cpath.client.query.TraverseResponse;
+import cpath.client.util.CPathException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Requests to the cPath2 server (via {@link App#client}) where identical concurrent requests
+ * (same canonical key) are sent only once: the first caller executes the request,
+ * and the others wait for (share) its in-flight result.
+ */
+final class CPathRequests {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CPathRequests.class);
+
+  private static final ConcurrentMap<String, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+  private CPathRequests() {
+  }
+
+  /**
+   * Executes the request in the calling thread, unless the same one is in progress,
+   * in which case waits for and returns that result (or exception).
+   *
+   * @param key     canonical request (see {@link KeyBuilder})
+   * @param request blocking call
+   * @param <T>     result type
+   * @return result
+   * @throws CPathException when the request fails, or the thread is interrupted while waiting
+   */
+  @SuppressWarnings("unchecked")
+  static <T> T call(String key, Callable<T> request) throws CPathException {
+    final CompletableFuture<Object> mine = new CompletableFuture<>();
+    final CompletableFuture<Object> existing = IN_FLIGHT.putIfAbsent(key, mine);
+    if (existing != null) {
+      LOGGER.debug("Joined the in-flight request: " + key);
+      try {
+        return (T) existing.get();
+      } catch (ExecutionException e) {
+        throw rethrow(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CPathException("Interrupted while waiting for " + key);
+      }
+    }
+
+    final T result;
+    try {
+      result = request.call();
+    } catch (Exception e) {
+      IN_FLIGHT.remove(key, mine);
+      mine.completeExceptionally(e);
+      throw rethrow(e);
+    } catch (Throwable e) {
+      IN_FLIGHT.remove(key, mine);
+      mine.completeExceptionally(e);
+      throw e;
+    }
+    IN_FLIGHT.remove(key, mine);
+    mine.complete(result);
+    return result;
+  }
+
+  /**
+   * Executes the request asynchronously (see {@link AppExecutors#io()}),
+   * unless the same one is in progress, in which case returns that result (or exception).
+   *
+   * @param key     canonical request (see {@link KeyBuilder})
+   * @param request blocking call
+   * @param <T>     result type
+   * @return future result
+   */
+  @SuppressWarnings("unchecked")
+  static <T> CompletableFuture<T> submit(String key, Callable<T> request) {
+    final CompletableFuture<Object> mine = new CompletableFuture<>();
+    final CompletableFuture<Object> existing = IN_FLIGHT.putIfAbsent(key, mine);
+    if (existing != null) {
+      LOGGER.debug("Joined the in-flight request: " + key);
+      return existing.thenApply(result -> (T) result);
+    }
+    try {
+      AppExecutors.io().execute(() -> {
+        Object result = null;
+        Throwable error = null;
+        try {
+          result = request.call();
+        } catch (Throwable e) {
+          error = e;
+        }
+        // no longer in flight before it's done (later callers send a new request)
+        IN_FLIGHT.remove(key, mine);
+        if (error != null)
+          mine.completeExceptionally(error);
+        else
+          mine.complete(result);
+      });
+    } catch (RejectedExecutionException e) {
+      IN_FLIGHT.remove(key, mine);
+      mine.completeExceptionally(e);
+    }
+    return mine.thenApply(result -> (T) result);
+  }
+
+  /**
+   * Gets property values of the objects.
+   *
+   * @param path BioPAX property path
+   * @param uris object URIs
+   * @return response
+   * @throws CPathException when the request fails
+   */
+  static TraverseResponse traverse(String path, Collection<String> uris) throws CPathException {
+    return call(traverseKey(path, uris),
+      () -> App.client.createTraverseQuery()
+        .propertyPath(path)
+        .sources(uris)
+        .result());
+  }
+
+  /**
+   * Gets property values of the objects asynchronously.
+   *
+   * @param path BioPAX property path
+   * @param uris object URIs
+   * @return future response
+   */
+  static CompletableFuture<TraverseResponse> traverseAsync(String path, Collection<String> uris) {
+    return submit(traverseKey(path, uris),
+      () -> App.client.createTraverseQuery()
+        .propertyPath(path)
+        .sources(uris)
+        .result());
+  }
+
+  /**
+   * Full-text search for a page of hits, asynchronously.
+   *
+   * @param keyword     query string
+   * @param type        BioPAX type filter
+   * @param datasources datasource filter values
+   * @param organisms   organism filter values
+   * @param page        page number (0-based)
+   * @return future response
+   */
+  static CompletableFuture<SearchResponse> searchAsync(String keyword, String type, Collection<String> datasources,
+                                                       Collection<String> organisms, int page) {
+    return submit(searchKey(keyword, type, datasources, organisms, page),
+      searchRequest(keyword, type, datasources, organisms, page));
+  }
+
+  /**
+   * Full-text search for top (root) pathways (all at once, there are no pages), asynchronously.
+   *
+   * @param keyword     query string
+   * @param datasources datasource filter values
+   * @param organisms   organism filter values
+   * @return future response
+   */
+  static CompletableFuture<SearchResponse> topPathwaysAsync(String keyword, Collection<String> datasources,
+                                                            Collection<String> organisms) {
+    return submit(topPathwaysKey(keyword, datasources, organisms),
+      topPathwaysRequest(keyword, datasources, organisms));
+  }
+
+  // the first page key has no page number
+  private static String searchKey(String keyword, String type, Collection<String> datasources,
+                                  Collection<String> organisms, int page) {
+    return new KeyBuilder("search").add("q", keyword).add("type", type)
+      .add("datasource", datasources).add("organism", organisms)
+      .add("page", (page > 0) ? page : null).toString();
+  }
+
+  private static Callable<SearchResponse> searchRequest(String keyword, String type, Collection<String> datasources,
+                                                        Collection<String> organisms, int page) {
+    return () -> App.client.createSearchQuery()
+      .typeFilter(type)
+      .datasourceFilter(datasources)
+      .organismFilter(organisms)
+      .queryString(keyword)
+      .page(page)
+      .result();
+  }
+
+  private static String topPathwaysKey(String keyword, Collection<String> datasources, Collection<String> organisms) {
+    return new KeyBuilder("top_pathways").add("q", keyword)
+      .add("datasource", datasources).add("organism", organisms).toString();
+  }
+
+  private static Callable<SearchResponse> topPathwaysRequest(String keyword, Collection<String> datasources,
+                                                             Collection<String> organisms) {
+    return () -> App.client.createTopPathwaysQuery()
+      .datasourceFilter(datasources)
+      .organismFilter(organisms)
+      .queryString(keyword)
+      .result();
+  }
+
+  private static String traverseKey(String path, Collection<String> uris) {
+    return new KeyBuilder("traverse").add("path", path).add("source", uris).toString();
+  }
+
+  private static CPathException rethrow(Throwable e) {
+    if (e instanceof CPathException)
+      return (CPathException) e;
+    if (e instanceof RuntimeException)
+      throw (RuntimeException) e;
+    if (e instanceof Error)
+      throw (Error) e;
+    throw new RuntimeException(e);
+  }
+
+  /**
+   * Makes a canonical request string: server URL, command, then the parameters
+   * (null and empty ones are skipped; collection values are sorted).
+   */
+  static final class KeyBuilder {
+    private final StringBuilder sb;
+    private char separator = '?';
+
+    KeyBuilder(String command) {
+      sb = new StringBuilder(App.client.getEndPointURL()).append(command);
+    }
+
+    KeyBuilder add(String name, Object value) {
+      if (value != null) {
+        sb.append(separator).append(name).append('=').append(value);
+        separator = '&';
+      }
+      return this;
+    }
+
+    KeyBuilder add(String name, Collection<String> values) {
+      return add(name, (values == null || values.isEmpty()) ? null : String.join(",", new TreeSet<>(values)));
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString();
+    }
+  }
+}
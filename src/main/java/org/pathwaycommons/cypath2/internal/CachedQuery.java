@@ -0,0 +1,118 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.CPathClient.Direction;
+import cpath.client.query.GraphType;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.*;
+
+/**
+ * A cPath2 get or graph query (BioPAX result) together with its canonical form,
+ * which is the key in the {@link QueryCache}
+ * (the same parameters in any order make the same key).
+ * The request is sent by {@link QueryStreams}, which reads the response as it arrives.
+ */
+final class CachedQuery {
+
+  private final String command;
+  // cPath2 web service parameters (multiple values - the parameter is repeated)
+  private final Map<String, Collection<String>> parameters;
+  private final String key;
+
+  private CachedQuery(String command, Map<String, Collection<String>> parameters) {
+    this.command = command;
+    this.parameters = parameters;
+    final CPathRequests.KeyBuilder keyBuilder = new CPathRequests.KeyBuilder(command);
+    for (Map.Entry<String, Collection<String>> e : parameters.entrySet())
+      keyBuilder.add(e.getKey(), e.getValue());
+    this.key = keyBuilder.toString();
+  }
+
+  /**
+   * Creates a 'get' query.
+   *
+   * @param sources URIs or IDs
+   * @return new query
+   */
+  static CachedQuery get(Collection<String> sources) {
+    final Map<String, Collection<String>> parameters = new LinkedHashMap<>();
+    add(parameters, "uri", sources);
+    return new CachedQuery("get", parameters);
+  }
+
+  /**
+   * Creates a 'graph' query.
+   *
+   * @param kind        graph query type
+   * @param sources     source URIs or IDs
+   * @param targets     target URIs or IDs (PATHSFROMTO), or null
+   * @param direction   direction, or null
+   * @param limit       search distance, or null (server default)
+   * @param datasources datasource filter values, or null
+   * @param organisms   organism filter values, or null
+   * @return new query
+   */
+  static CachedQuery graph(GraphType kind, Collection<String> sources, Collection<String> targets,
+                           Direction direction, Integer limit,
+                           Collection<String> datasources, Collection<String> organisms) {
+    final Map<String, Collection<String>> parameters = new LinkedHashMap<>();
+    add(parameters, "kind", Collections.singleton(kind.name()));
+    add(parameters, "source", sources);
+    add(parameters, "target", targets);
+    if (direction != null)
+      add(parameters, "direction", Collections.singleton(direction.name()));
+    if (limit != null)
+      add(parameters, "limit", Collections.singleton(limit.toString()));
+    add(parameters, "datasource", datasources);
+    add(parameters, "organism", organisms);
+    return new CachedQuery("graph", parameters);
+  }
+
+  /**
+   * @return canonical form of the query (server URL, command and sorted parameters)
+   */
+  String key() {
+    return key;
+  }
+
+  /**
+   * @return the web service URL to post the query to
+   */
+  String url() {
+    return App.client.getEndPointURL() + command;
+  }
+
+  /**
+   * @return the query parameters, URL-encoded (application/x-www-form-urlencoded)
+   */
+  String formData() {
+    final StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Collection<String>> e : parameters.entrySet()) {
+      for (String value : e.getValue()) {
+        if (sb.length() > 0)
+          sb.append('&');
+        sb.append(e.getKey()).append('=').append(encode(value));
+      }
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return key;
+  }
+
+  private static void add(Map<String, Collection<String>> parameters, String name, Collection<String> values) {
+    if (values != null && !values.isEmpty())
+      parameters.put(name, new ArrayList<>(values));
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
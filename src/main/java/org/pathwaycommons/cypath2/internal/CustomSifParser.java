@@ -1,10 +1,12 @@
 package org.pathwaycommons.cypath2.internal;
 
+import org.biopax.paxtools.pattern.miner.SIFInteraction;
 import org.cytoscape.model.CyEdge;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.model.CyTable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -28,9 +30,32 @@ public class CustomSifParser {
     if (parts == null || parts.length < 6)
       throw new RuntimeException("Bad SIF entry: " + row);
 
-    final CyNode source = createNode(parts[0]);
-    final String interactionType = parts[1];
-    final CyNode target = createNode(parts[2]);
+    final CyEdge edge = createEdge(parts[0], parts[1], parts[2]);
+
+    // add edge attributes
+    addEdgeAttributes(edge, "datasource", Arrays.asList(parts[3].split(";")));
+    addEdgeAttributes(edge, "publication", Arrays.asList(parts[4].split(";")));
+    addEdgeAttributes(edge, "pathway", Arrays.asList(parts[5].split(";")));
+  }
+
+  /**
+   * Adds the inferred binary interaction to the network
+   * (same as parsing its custom SIF text row, but without formatting/parsing).
+   *
+   * @param inter SIF interaction
+   */
+  public void parse(final SIFInteraction inter) {
+    final CyEdge edge = createEdge(inter.sourceID, inter.type.getTag(), inter.targetID);
+
+    // add edge attributes
+    addEdgeAttributes(edge, "datasource", new ArrayList<String>(inter.getDataSources()));
+    addEdgeAttributes(edge, "publication", inter.getPublicationIDs(true));
+    addEdgeAttributes(edge, "pathway", inter.getPathwayNames());
+  }
+
+  private CyEdge createEdge(final String sourceUri, final String interactionType, final String targetUri) {
+    final CyNode source = createNode(sourceUri);
+    final CyNode target = createNode(targetUri);
 
     final CyEdge edge = network.addEdge(source, target, true);
     network.getRow(edge).set(CyEdge.INTERACTION, interactionType);
@@ -38,12 +63,7 @@ public class CustomSifParser {
       " (" + interactionType + ") " + network.getRow(target).get(CyNetwork.NAME, String.class);
     network.getRow(edge).set(CyNetwork.NAME, edgeName);
 
-    // add edge attributes
-    if (edge != null) {
-      addEdgeAttributes(edge, "datasource", parts[3]);
-      addEdgeAttributes(edge, "publication", parts[4]);
-      addEdgeAttributes(edge, "pathway", parts[5]);
-    }
+    return edge;
   }
 
   private CyNode createNode(final String uri) {
@@ -57,11 +77,10 @@ public class CustomSifParser {
     return node;
   }
 
-  private void addEdgeAttributes(final CyEdge element, final String column, final String entry) {
+  private void addEdgeAttributes(final CyEdge element, final String column, final List<String> value) {
     final CyTable table = network.getRow(element).getTable();
     if (table.getColumn(column) == null)
       table.createListColumn(column, String.class, false);
-    List<String> value = Arrays.asList(entry.split(";"));
     network.getRow(element).set(column, value);
   }
 
@@ -3,10 +3,12 @@ package org.pathwaycommons.cypath2.internal;
 import cpath.client.CPathClient;
 import org.biopax.paxtools.trove.TProvider;
 import org.biopax.paxtools.util.BPCollections;
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.application.CyApplicationManager;
 import org.cytoscape.application.swing.CyAction;
 import org.cytoscape.application.swing.CySwingApplication;
 import org.cytoscape.application.swing.search.NetworkSearchTaskFactory;
+import org.cytoscape.event.CyEventHelper;
 import org.cytoscape.io.util.StreamUtil;
 import org.cytoscape.model.CyNetworkFactory;
 import org.cytoscape.model.CyNetworkManager;
@@ -23,16 +25,19 @@ import org.cytoscape.view.model.CyNetworkViewManager;
 import org.cytoscape.view.vizmap.VisualMappingFunctionFactory;
 import org.cytoscape.view.vizmap.VisualMappingManager;
 import org.cytoscape.view.vizmap.VisualStyleFactory;
+import org.cytoscape.work.TaskFactory;
 import org.cytoscape.work.swing.DialogTaskManager;
 import org.cytoscape.work.undo.UndoSupport;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import static org.cytoscape.work.ServiceProperties.*;
 
@@ -101,6 +106,8 @@ public final class CyActivator extends AbstractCyActivator {
 
     StreamUtil streamUtil = getService(bc, StreamUtil.class);
 
+    CyEventHelper cyEventHelper = getService(bc, CyEventHelper.class);
+
     // keep all the service references in one place -
     App.cyServices = new CyServices(
       cySwingApplication,
@@ -121,7 +128,8 @@ public final class CyActivator extends AbstractCyActivator {
       visualStyleFactory,
       discreteMappingFunctionFactory,
       passthroughMappingFunctionFactory,
-      streamUtil);
+      streamUtil,
+      cyEventHelper);
 
     // Create/init a cpath2 client instance
     String cPath2Url = cyProperties.getProperties().getProperty(App.PROP_CPATH2_SERVER_URL);
@@ -133,6 +141,47 @@ public final class CyActivator extends AbstractCyActivator {
     }
     cyProperties.getProperties().setProperty(App.PROP_CPATH2_SERVER_URL, App.client.getEndPointURL());
 
+    // the app's thread pools (new ones each time the app starts)
+    AppExecutors.start();
+    // run the blocking web service calls on virtual threads if the JVM supports (and it's not disabled)
+    String virtualThreads = cyProperties.getProperties().getProperty(App.PROP_VIRTUAL_THREADS);
+    if (virtualThreads == null) {
+      virtualThreads = "true";
+      cyProperties.getProperties().setProperty(App.PROP_VIRTUAL_THREADS, virtualThreads);
+    }
+    AppExecutors.initIo(Boolean.parseBoolean(virtualThreads.trim()));
+
+    // the on-disk cache of get/graph query results (disabled when the TTL or size is 0)
+    final long cacheTtl = getLongProperty(cyProperties.getProperties(), App.PROP_QUERY_CACHE_TTL, 24);
+    final long cacheSize = getLongProperty(cyProperties.getProperties(), App.PROP_QUERY_CACHE_SIZE, 200);
+    final File appDir = getService(bc, CyApplicationConfiguration.class)
+      .getAppConfigurationDirectoryLocation(CyActivator.class);
+    if (cacheTtl > 0 && cacheSize > 0) {
+      App.queryCache = new QueryCache(new File(appDir, "query-cache"),
+        cacheSize * 1024 * 1024, TimeUnit.HOURS.toMillis(cacheTtl));
+    }
+    // binary snapshots of the parsed BioPAX models (disabled when the size is 0)
+    final long snapshotsSize = getLongProperty(cyProperties.getProperties(), App.PROP_MODEL_SNAPSHOTS_SIZE, 500);
+    if (snapshotsSize > 0) {
+      App.modelSnapshots = new ModelSnapshots(new File(appDir, "model-snapshots"),
+        snapshotsSize * 1024 * 1024, AppExecutors.executor(AppExecutors.Lane.BULK));
+    }
+
+    // hit details cache (disabled when the size is 0), optionally saved between sessions
+    final long detailsCacheSize = getLongProperty(cyProperties.getProperties(), App.PROP_DETAILS_CACHE_SIZE, 5000);
+    if (detailsCacheSize > 0) {
+      String persist = cyProperties.getProperties().getProperty(App.PROP_DETAILS_CACHE_PERSIST);
+      if (persist == null) {
+        persist = "true";
+        cyProperties.getProperties().setProperty(App.PROP_DETAILS_CACHE_PERSIST, persist);
+      }
+      App.detailsCache = new DetailsCache((int) Math.min(detailsCacheSize, Integer.MAX_VALUE),
+        Boolean.parseBoolean(persist.trim()) ? new File(appDir, "details-cache.bin") : null);
+    }
+
+    // local copy of the server datasources/organisms metadata
+    App.metadataFile = new File(appDir, "metadata.properties");
+
     // get the app description from the resource file
     final Properties props = new Properties();
     try {
@@ -184,6 +233,14 @@ public final class CyActivator extends AbstractCyActivator {
     nodeProp.setProperty(TITLE, "PathwayCommons: Extend Network...");
     registerService(bc, expandNodeContextMenuFactory, NodeViewTaskFactory.class, nodeProp);
 
+    // import a sub-network from a large local BioPAX file (using a persistent file index)
+    final TaskFactory fileImportTaskFactory = new BioPaxFileImportTaskFactory(new File(appDir, "file-index"));
+    final Properties fileImportProp = new Properties();
+    fileImportProp.setProperty(PREFERRED_MENU, APPS_MENU + ".PathwayCommons");
+    fileImportProp.setProperty(MENU_GRAVITY, "3.0");
+    fileImportProp.setProperty(TITLE, "Import from BioPAX File...");
+    registerService(bc, fileImportTaskFactory, TaskFactory.class, fileImportProp);
+
     // Node selection listener (only for networks imported from BioPAX) and eastern cytopanel (results panel).
     final EastCytoPanelComponent cytoPanelComponent = new EastCytoPanelComponent();
     registerAllServices(bc, cytoPanelComponent);
@@ -197,5 +254,28 @@ public final class CyActivator extends AbstractCyActivator {
     registerAllServices(bc, networkSearchTaskFactory);
   }
 
+  @Override
+  public void stop(BundleContext bc) {
+    LOGGER.info("Stopping PathwayCommons app...");
+    super.stop(bc);
+    AppExecutors.shutdown();
+    if (App.detailsCache != null)
+      App.detailsCache.save();
+  }
+
+  // gets the number or sets the default value (so that users can find and edit it)
+  private static long getLongProperty(Properties properties, String name, long defaultValue) {
+    String value = properties.getProperty(name);
+    if (value != null) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        LOGGER.warn("Invalid " + name + "=" + value + "; will use " + defaultValue);
+      }
+    }
+    properties.setProperty(name, String.valueOf(defaultValue));
+    return defaultValue;
+  }
+
 }
 
@@ -0,0 +1,147 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.level3.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-import memo of data derived from BioPAX elements (names, xref summaries, taxonomy IDs),
+ * so that, e.g., physical entities that share an entity reference, or edges that share a node,
+ * do not compute the same results again. Thread-safe; the cached values are immutable.
+ */
+final class DerivedData {
+
+  private final Map<BioPAXElement, String> names = new ConcurrentHashMap<>();
+  private final Map<XReferrable, XrefSummary> xrefs = new ConcurrentHashMap<>();
+  private final Map<BioSource, Integer> taxonomyIds = new ConcurrentHashMap<>();
+
+  /**
+   * @param bpe BioPAX element
+   * @return same as {@link BioPaxMapper#getName(BioPAXElement)}
+   */
+  String name(BioPAXElement bpe) {
+    return names.computeIfAbsent(bpe, BioPaxMapper::getName);
+  }
+
+  /**
+   * @param bpe xreferrable BioPAX element
+   * @return summary of the element's own xrefs
+   */
+  XrefSummary xrefs(XReferrable bpe) {
+    return xrefs.computeIfAbsent(bpe, x -> new XrefSummary(x.getXref()));
+  }
+
+  /**
+   * @param bpe BioPAX element
+   * @return same as {@link BioPaxMapper#getOrganismTaxonomyId(BioPAXElement)}
+   */
+  int taxonomyId(BioPAXElement bpe) {
+    Object bs = BioPaxMapper.getValue(bpe, "organism");
+    return (bs instanceof BioSource)
+      ? taxonomyIds.computeIfAbsent((BioSource) bs, BioPaxMapper::getTaxonomyId) : -1;
+  }
+
+  /**
+   * Attribute values made from a set of xrefs.
+   */
+  static final class XrefSummary {
+    //standard IDs only (no db name), one list per xref class
+    final List<String> uniXrefs;
+    final List<String> relXrefs;
+    final List<String> pubXrefs;
+    //for (hidden) list attributes that contain more info about the xref
+    final List<String> uniLinks;
+    final List<String> relLinks;
+    final List<String> pubLinks;
+    //for iHOP links
+    final List<ExternalLink> externalLinks;
+    //special individual (String) IDs; the first found
+    final String geneSymbol;
+    final String ncbiGene;
+    final String uniprot;
+
+    private XrefSummary(Collection<Xref> xrefs) {
+      List<String> uniXrefList = new ArrayList<>();
+      List<String> relXrefList = new ArrayList<>();
+      List<String> pubXrefList = new ArrayList<>();
+      List<String> uniLinkList = new ArrayList<>();
+      List<String> relLinkList = new ArrayList<>();
+      List<String> pubLinkList = new ArrayList<>();
+      String symbol = null;
+      String gene = null;
+      String up = null;
+
+      for (Xref link : xrefs) {
+        if (link.getDb() == null || link.getDb().isEmpty()
+          || link.getId() == null || link.getId().isEmpty())
+          continue; // too bad (data issue...); skip it
+
+        // detect several important ID attributes first
+        // (it works better, if at all, when the biopax model was normalized)
+        final String db = link.getDb().toUpperCase().trim();
+        final String id = link.getId().trim();
+        if (db.equalsIgnoreCase("HGNC SYMBOL") //- official primary db name
+          || db.startsWith("HGNC") || db.startsWith("HUGO GENE")
+          || db.startsWith("GENE SYMBOL") || db.startsWith("GENE NAME")) {
+          if (symbol == null && !id.startsWith("HGNC:")) //ignore HGNC:12345 IDs
+            symbol = id;
+        } else if (db.equalsIgnoreCase("NCBI GENE") //main (official) db name
+          || db.equalsIgnoreCase("ENTREZ GENE") || db.equalsIgnoreCase("GENE ID")) {
+          if (gene == null)
+            gene = id;
+        } else if (db.startsWith("UNIPROT")
+          || db.startsWith("SWISSPROT") || db.startsWith("SWISS-PROT")) {
+          if (up == null)
+            up = id;
+        }
+
+        // then, for any xref, collect IDs
+        StringBuilder temp = new StringBuilder();
+        temp.append(ExternalLinkUtil.createLink(link.getDb(), link.getId()));
+        if (link instanceof UnificationXref) {
+          addNew(uniLinkList, temp.toString());
+          addNew(uniXrefList, link.toString());
+        } else if (link instanceof PublicationXref) {
+          PublicationXref xl = (PublicationXref) link;
+          temp.append(" ");
+          if (!xl.getAuthor().isEmpty()) {
+            temp.append(xl.getAuthor().toString() + " et al., ");
+          }
+          if (xl.getTitle() != null) {
+            temp.append(xl.getTitle());
+          }
+          if (!xl.getSource().isEmpty()) {
+            temp.append(" (" + xl.getSource().toString());
+            if (xl.getYear() > 0) {
+              temp.append(", " + xl.getYear());
+            }
+            temp.append(")");
+          }
+          addNew(pubLinkList, temp.toString());
+          addNew(pubXrefList, link.toString());
+        } else if (link instanceof RelationshipXref) {
+          addNew(relLinkList, temp.toString());
+          addNew(relXrefList, link.toString());
+        }
+      }
+
+      this.uniXrefs = Collections.unmodifiableList(uniXrefList);
+      this.relXrefs = Collections.unmodifiableList(relXrefList);
+      this.pubXrefs = Collections.unmodifiableList(pubXrefList);
+      this.uniLinks = Collections.unmodifiableList(uniLinkList);
+      this.relLinks = Collections.unmodifiableList(relLinkList);
+      this.pubLinks = Collections.unmodifiableList(pubLinkList);
+      this.externalLinks = Collections.unmodifiableList(BioPaxMapper.extractXrefs(xrefs));
+      this.geneSymbol = symbol;
+      this.ncbiGene = gene;
+      this.uniprot = up;
+    }
+
+    private static void addNew(List<String> list, String value) {
+      if (!list.contains(value))
+        list.add(value);
+    }
+  }
+}
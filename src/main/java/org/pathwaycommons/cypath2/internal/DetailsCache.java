@@ -0,0 +1,173 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Process-wide cache of the search hits' details (html), used across searches,
+ * keyed by the hit URI, search type and filters (see {@link #key}).
+ * The least recently used entries are removed when there are too many.
+ * Entries can be saved to a file and loaded in the next session;
+ * they are dropped when the server datasources (see {@link #setDatasourcesFingerprint(String)}) change.
+ */
+final class DetailsCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DetailsCache.class);
+  private static final String FORMAT = "cypath2-details-1";
+
+  private final int maxEntries;
+  private final File file;
+  private final LinkedHashMap<String, String> entries;
+  // server datasources fingerprint the entries were made for
+  private String fingerprint;
+  // whether the current fingerprint is known (the cache is not used until then)
+  private boolean ready;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates the cache and loads the saved entries, if any.
+   *
+   * @param maxEntries max number of entries
+   * @param file       where to save/load the entries; null - do not persist
+   */
+  DetailsCache(final int maxEntries, File file) {
+    this.maxEntries = maxEntries;
+    this.file = file;
+    this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    if (file != null && file.isFile())
+      load();
+  }
+
+  /**
+   * @param uri         search hit URI
+   * @param searchFor   search type filter
+   * @param datasources datasource filter values
+   * @param organisms   organism filter values
+   * @return canonical key
+   */
+  static String key(String uri, String searchFor, Collection<String> datasources, Collection<String> organisms) {
+    return new CPathRequests.KeyBuilder("details").add("uri", uri).add("type", searchFor)
+      .add("datasource", datasources).add("organism", organisms).toString();
+  }
+
+  /**
+   * @param key see {@link #key}
+   * @return html or null when it's not in the cache (or the server datasources are not known yet)
+   */
+  synchronized String get(String key) {
+    final String html = (ready) ? entries.get(key) : null;
+    if (html != null)
+      hits.incrementAndGet();
+    else
+      misses.incrementAndGet();
+    return html;
+  }
+
+  /**
+   * @param key  see {@link #key}
+   * @param html details
+   */
+  synchronized void put(String key, String html) {
+    if (ready)
+      entries.put(key, html);
+  }
+
+  /**
+   * Sets the current server datasources fingerprint (see {@link Metadata#datasourcesFingerprint});
+   * clears the cache if the entries were made for different datasources.
+   *
+   * @param datasourcesFingerprint current fingerprint
+   */
+  synchronized void setDatasourcesFingerprint(String datasourcesFingerprint) {
+    if (!datasourcesFingerprint.equals(fingerprint)) {
+      if (!entries.isEmpty())
+        LOGGER.info("Server datasources have changed; dropped " + entries.size() + " cached hit details");
+      entries.clear();
+      fingerprint = datasourcesFingerprint;
+    }
+    ready = true;
+  }
+
+  /**
+   * Writes the entries to the file (if persistent and the server datasources are known).
+   */
+  synchronized void save() {
+    if (file == null || !ready)
+      return;
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("details", ".tmp", file.getAbsoluteFile().getParentFile());
+      try (DataOutputStream out = new DataOutputStream(
+        new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))) {
+        out.writeUTF(FORMAT);
+        out.writeUTF(fingerprint);
+        out.writeInt(entries.size());
+        // the least recently used first
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+          writeString(out, e.getKey());
+          writeString(out, e.getValue());
+        }
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      LOGGER.info("Saved " + entries.size() + " cached hit details");
+    } catch (IOException e) {
+      LOGGER.warn("Failed to save the hit details cache " + file + ": " + e);
+      if (tmp != null)
+        tmp.delete();
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d hits, %d misses, %d entries (max %d)",
+      hits.get(), misses.get(), entries.size(), maxEntries);
+  }
+
+  private void load() {
+    try (DataInputStream in = new DataInputStream(
+      new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+      if (!FORMAT.equals(in.readUTF()))
+        throw new IOException("Unknown format");
+      fingerprint = in.readUTF();
+      final int n = in.readInt();
+      for (int i = 0; i < n; i++)
+        entries.put(readString(in), readString(in));
+      LOGGER.info("Loaded " + entries.size() + " cached hit details");
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Failed to load the hit details cache " + file + " (will delete): " + e);
+      entries.clear();
+      fingerprint = null;
+      file.delete();
+    }
+  }
+
+  // unlike writeUTF, not limited to 64K bytes
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
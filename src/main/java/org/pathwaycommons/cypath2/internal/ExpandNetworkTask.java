@@ -1,8 +1,8 @@
 package org.pathwaycommons.cypath2.internal;
 
 import cpath.client.CPathClient.Direction;
-import cpath.client.query.CPathGraphQuery;
 import cpath.client.query.GraphType;
+import org.biopax.paxtools.model.Model;
 import org.cytoscape.model.CyColumn;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
@@ -13,6 +13,7 @@ import org.cytoscape.view.model.View;
 import org.cytoscape.work.*;
 import org.cytoscape.work.util.ListSingleSelection;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -32,8 +33,16 @@ public class ExpandNetworkTask extends AbstractTask implements Task {
     tooltip = "NOTE: filter settings in 'Find and Get' tab are in effect here as well.")
   public ListSingleSelection<String> querySelection;
 
+  @Tunable(description = "Add to this network:", gravity = 707, groups = " ",
+    tooltip = "Add only new nodes and edges to the current network (BioPAX hypergraph only)<br/>" +
+      "instead of creating a new network and view")
+  public boolean mergeIntoNetwork;
+
+  private final CyNetworkView networkView;
+
   public ExpandNetworkTask(CyNetworkView cyNetworkView, View<CyNode> cyNodeView) {
     network = cyNetworkView.getModel();
+    networkView = cyNetworkView;
     columnSelection = getTargetColumns();
     querySelection = new ListSingleSelection<String>("NEIGHBORHOOD", "PATHSBETWEEN");
     querySelection.setSelectedValue("NEIGHBORHOOD");
@@ -41,7 +50,7 @@ public class ExpandNetworkTask extends AbstractTask implements Task {
 
   @ProvidesTitle
   public String tunablesDlgTitle() {
-    return "PathwayCommons: Expand Network (into a new network)";
+    return "PathwayCommons: Expand Network";
   }
 
   @Override
@@ -73,22 +82,74 @@ public class ExpandNetworkTask extends AbstractTask implements Task {
 
     //execute, create a new network and view (if any data will be returned from the server)
     taskMonitor.setStatusMessage("Executing " + graphType + " query (in Pathway Commons)");
-    final CPathGraphQuery graphQ = App.client.createGraphQuery()
-      .kind(("NEIGHBORHOOD".equals(graphType)) ? GraphType.NEIGHBORHOOD : GraphType.PATHSBETWEEN)
-      .sources(values)
-      .datasourceFilter(App.options.selectedDatasources())
-      .direction(("NEIGHBORHOOD".equals(graphType)) ? Direction.UNDIRECTED : null)
-      //.limit(1) TODO set limit via tunables (default is 1)
-      .organismFilter(App.options.selectedOrganisms());
-    App.cyServices.taskManager.execute(new TaskIterator(
-      new NetworkAndViewTask(graphQ, null)
-    ));
+    //TODO set limit via tunables (default is 1)
+    final CachedQuery graphQ = CachedQuery.graph(
+      ("NEIGHBORHOOD".equals(graphType)) ? GraphType.NEIGHBORHOOD : GraphType.PATHSBETWEEN,
+      values, null, ("NEIGHBORHOOD".equals(graphType)) ? Direction.UNDIRECTED : null, null,
+      App.options.selectedDatasources(), App.options.selectedOrganisms());
+    if (mergeIntoNetwork && isHypergraph()) {
+      merge(graphQ, taskMonitor);
+    } else {
+      App.cyServices.taskManager.execute(new TaskIterator(
+        new NetworkAndViewTask(graphQ, null)
+      ));
+    }
 
     taskMonitor.setStatusMessage("Done");
     taskMonitor.setProgress(1.0);
   }
 
 
+  private boolean isHypergraph() {
+    String kind = network.getRow(network).get(BioPaxMapper.BIOPAX_NETWORK, String.class);
+    return BiopaxVisualStyleUtil.BIO_PAX_VISUAL_STYLE.equals(kind);
+  }
+
+  // adds only new nodes/edges to the current network, and lays out only new nodes
+  private void merge(CachedQuery graphQ, TaskMonitor taskMonitor) throws Exception {
+    InputStream data = QueryStreams.open(graphQ);
+    if (data == null) {
+      taskMonitor.setStatusMessage("No data returned from the server.");
+      return;
+    }
+    taskMonitor.setProgress(0.4);
+    if (cancelled) {
+      data.close();
+      return;
+    }
+
+    taskMonitor.setStatusMessage("Adding new nodes and edges to the network...");
+    Model model = null;
+    try {
+      model = BioPaxMapper.read(data);
+      if (model != null)
+        QueryStreams.drain(data); //complete, to be cached
+    } finally {
+      data.close();
+    }
+    if (model == null) {
+      taskMonitor.setStatusMessage("No BioPAX data returned from the server.");
+      return;
+    }
+    final BioPaxMapper.Merged merged = new BioPaxMapper(model, App.cyServices.networkFactory)
+      .mergeIntoCyNetwork(network);
+    taskMonitor.setStatusMessage("Added " + merged.newNodes.size() + " new nodes and "
+      + merged.newEdges + " new edges");
+    if (merged.isEmpty())
+      return;
+
+    // create the new node and edge views now, then style them, and lay out the new nodes
+    App.cyServices.eventHelper.flushPayloadEvents();
+    final Set<View<CyNode>> nodeViews = new HashSet<View<CyNode>>();
+    for (CyNode node : merged.newNodes) {
+      View<CyNode> nodeView = networkView.getNodeView(node);
+      if (nodeView != null)
+        nodeViews.add(nodeView);
+    }
+    // (an empty set would mean all the nodes)
+    NetworkAndViewTask.applyStyleAndLayout(networkView, nodeViews.isEmpty() ? null : nodeViews);
+  }
+
   private ListSingleSelection<String> getTargetColumns() {
     final CyTable table = network.getTable(CyNode.class, CyNetwork.DEFAULT_ATTRS);
     final List<String> colNames = new ArrayList<String>();
@@ -64,7 +64,7 @@ final class HitInfoJTabbedPane extends JTabbedPane {
         if (hyperlinkEvent.getEventType() == HyperlinkEvent.EventType.ACTIVATED) {
           //import/create a network (parent pathways) if the link is clicked
           String uri = hyperlinkEvent.getURL().toString();
-          final CPathGetQuery query = App.client.createGetQuery().sources(Collections.singleton(uri));
+          final CachedQuery query = CachedQuery.get(Collections.singleton(uri));
           App.cyServices.taskManager.execute(new TaskIterator(
             new NetworkAndViewTask(query, current.toString())));
         }
@@ -100,7 +100,7 @@ final class HitInfoJTabbedPane extends JTabbedPane {
    * @param item
    */
   public synchronized void setCurrentItem(final SearchHit item) {
-    String summaryHtml = hitsModel.hitsSummaryMap.get(item.getUri());
+    String summaryHtml = hitsModel.getSummary(item);
     summaryTextPane.setText(summaryHtml);
     summaryTextPane.setCaretPosition(0);
 
@@ -114,7 +114,7 @@ final class HitInfoJTabbedPane extends JTabbedPane {
     } else {
       detailsTextPane.setText("");
       //get/update info in another thread...
-      App.cachedThreadPool.execute(new Runnable() {
+      AppExecutors.execute(AppExecutors.Lane.INTERACTIVE, AppExecutors.NORMAL, new Runnable() {
         @Override
         public void run() {
           try {
@@ -161,16 +161,13 @@ final class HitInfoJTabbedPane extends JTabbedPane {
           if (!isProccess) {
             // create new 'neighborhood' query for a physical entity or entity reference type hit;
             // use global organism and datasource filters
-            final CPathGraphQuery graphQuery = App.client.createGraphQuery()
-              .datasourceFilter(App.options.selectedDatasources())
-              .organismFilter(App.options.selectedOrganisms())
-              .sources(Collections.singleton(uri))
-              .kind(GraphType.NEIGHBORHOOD);
+            final CachedQuery graphQuery = CachedQuery.graph(GraphType.NEIGHBORHOOD,
+              Collections.singleton(uri), null, null, null,
+              App.options.selectedDatasources(), App.options.selectedOrganisms());
             App.cyServices.taskManager.execute(new TaskIterator(
               new NetworkAndViewTask(graphQuery, currentItem.toString())));
           } else { // for a biological process (pathway or interaction), use '/get' command
-            final CPathGetQuery getQuery = App.client.createGetQuery()
-              .sources(Collections.singleton(uri));
+            final CachedQuery getQuery = CachedQuery.get(Collections.singleton(uri));
             App.cyServices.taskManager.execute(new TaskIterator(
               new NetworkAndViewTask(getQuery, currentItem.toString())));
           }
@@ -0,0 +1,120 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchHit;
+
+import java.util.*;
+
+/**
+ * Facet index of the search hits: a bitset (over the hit positions) per
+ * BioPAX type, organism and datasource value; so that filtering is bitwise and/or,
+ * and counting is a popcount.
+ */
+final class HitsFacets {
+
+  enum Facet {
+    TYPE, ORGANISM, DATASOURCE
+  }
+
+  private final List<SearchHit> hits;
+  private final Map<Facet, Map<String, BitSet>> index = new EnumMap<Facet, Map<String, BitSet>>(Facet.class);
+  // hits without organism or datasource values (these pass such filters)
+  private final Map<Facet, BitSet> unspecified = new EnumMap<Facet, BitSet>(Facet.class);
+
+  /**
+   * Indexes the hits.
+   *
+   * @param hits search hits (not modified)
+   */
+  HitsFacets(List<SearchHit> hits) {
+    this.hits = hits;
+    for (Facet facet : Facet.values()) {
+      index.put(facet, new LinkedHashMap<String, BitSet>());
+      unspecified.put(facet, new BitSet(hits.size()));
+    }
+    for (int i = 0; i < hits.size(); i++) {
+      final SearchHit hit = hits.get(i);
+      if (hit.getBiopaxClass() != null) // otherwise, never passes the type filter
+        bits(Facet.TYPE, hit.getBiopaxClass()).set(i);
+      add(Facet.ORGANISM, hit.getOrganism(), i);
+      add(Facet.DATASOURCE, hit.getDataSource(), i);
+    }
+  }
+
+  /**
+   * @return number of hits
+   */
+  int size() {
+    return hits.size();
+  }
+
+  /**
+   * @param facet facet
+   * @return values of the facet (in the order of appearance)
+   */
+  Set<String> values(Facet facet) {
+    return Collections.unmodifiableSet(index.get(facet).keySet());
+  }
+
+  /**
+   * @return new set of all the hit positions
+   */
+  BitSet all() {
+    final BitSet bits = new BitSet(hits.size());
+    bits.set(0, hits.size());
+    return bits;
+  }
+
+  /**
+   * @param facet  facet
+   * @param values selected facet values
+   * @return new set of the hits that have any of the values (or have no values of this facet, unless it's TYPE)
+   */
+  BitSet select(Facet facet, Collection<String> values) {
+    final BitSet bits = (BitSet) unspecified.get(facet).clone();
+    for (String value : values) {
+      BitSet valueBits = index.get(facet).get(value);
+      if (valueBits != null)
+        bits.or(valueBits);
+    }
+    return bits;
+  }
+
+  /**
+   * @param facet facet
+   * @param value facet value
+   * @param among hit positions to count
+   * @return number of the hits (among those) that have the value
+   */
+  int count(Facet facet, String value, BitSet among) {
+    final BitSet valueBits = index.get(facet).get(value);
+    if (valueBits == null)
+      return 0;
+    final BitSet bits = (BitSet) valueBits.clone();
+    bits.and(among);
+    return bits.cardinality();
+  }
+
+  /**
+   * @param bits hit positions
+   * @return the hits
+   */
+  List<SearchHit> hits(BitSet bits) {
+    final List<SearchHit> selected = new ArrayList<SearchHit>(bits.cardinality());
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+      selected.add(hits.get(i));
+    return selected;
+  }
+
+  private void add(Facet facet, List<String> values, int position) {
+    if (values == null || values.isEmpty()) {
+      unspecified.get(facet).set(position);
+    } else {
+      for (String value : values)
+        bits(facet, value).set(position);
+    }
+  }
+
+  private BitSet bits(Facet facet, String value) {
+    return index.get(facet).computeIfAbsent(value, k -> new BitSet(hits.size()));
+  }
+}
@@ -1,6 +1,7 @@
 package org.pathwaycommons.cypath2.internal;
 
 import cpath.client.query.SearchHit;
+import org.pathwaycommons.cypath2.internal.HitsFacets.Facet;
 
 import javax.swing.*;
 import javax.swing.event.TreeModelEvent;
@@ -9,7 +10,6 @@ import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.util.*;
-import java.util.List;
 
 
 final class HitsFilterPanel extends JPanel implements Observer {
@@ -18,9 +18,6 @@ final class HitsFilterPanel extends JPanel implements Observer {
   private final CheckNode rootNode;
   private final JTreeWithCheckNodes tree;
   private final CollapsablePanel filterTreePanel;
-  private final Map<String, Integer> numHitsByTypeMap = new HashMap<String, Integer>();
-  private final Map<String, Integer> numHitsByOrganismMap = new HashMap<String, Integer>();
-  private final Map<String, Integer> numHitsByDatasourceMap = new HashMap<String, Integer>();
   boolean typeFilterEnabled;
   boolean organismFilterEnabled;
   boolean datasourceFilterEnabled;
@@ -71,103 +68,70 @@ final class HitsFilterPanel extends JPanel implements Observer {
 
 
   private void applyFilter(final HitsModel model) {
+    applyFilter(model, hitsJList::clearSelection);
+  }
 
-    ChainedFilter chainedFilter = new ChainedFilter();
+  // then - what to do (on the EDT) after the hits list is updated
+  private void applyFilter(final HitsModel model, final Runnable then) {
 
-    if (typeFilterEnabled) {
-      Set<String> entityTypeSet = new HashSet<String>();
-      for (int i = 0; i < typeFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) typeFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        if (checkNode.isSelected()) { // - checked
-          entityTypeSet.add(categoryCount.id);
-        }
-      }
-      EntityTypeFilter entityTypeFilter = new EntityTypeFilter(entityTypeSet);
-      chainedFilter.addFilter(entityTypeFilter);
-    }
+    final HitsFacets facets = model.getFacets();
+    final BitSet passed = facets.all();
 
-    if (organismFilterEnabled) {
-      Set<String> entityOrganismSet = new HashSet<String>();
-      for (int i = 0; i < organismFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) organismFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        if (checkNode.isSelected()) {
-          entityOrganismSet.add(categoryCount.id);
-        }
-      }
-      OrganismFilter organismFilter = new OrganismFilter(entityOrganismSet);
-      chainedFilter.addFilter(organismFilter);
-    }
+    if (typeFilterEnabled)
+      passed.and(facets.select(Facet.TYPE, selectedIds(typeFilterNode)));
 
-    if (datasourceFilterEnabled) {
-      Set<String> entityDataSourceSet = new HashSet<String>();
-      for (int i = 0; i < dataSourceFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) dataSourceFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        if (checkNode.isSelected()) {
-          entityDataSourceSet.add(categoryCount.id);
-        }
-      }
-      DataSourceFilter dataSourceFilter = new DataSourceFilter(entityDataSourceSet);
-      chainedFilter.addFilter(dataSourceFilter);
-    }
+    if (organismFilterEnabled)
+      passed.and(facets.select(Facet.ORGANISM, selectedIds(organismFilterNode)));
 
-    //apply filters and update the counts next to checked tree nodes
-    final List<SearchHit> passedRecordList = chainedFilter.filter(model.getHits());
+    if (datasourceFilterEnabled)
+      passed.and(facets.select(Facet.DATASOURCE, selectedIds(dataSourceFilterNode)));
 
-    //update the hits list (clear, add only hits that pass current filters)
-    final DefaultListModel listModel = (DefaultListModel) hitsJList.getModel();
-    listModel.clear();
-    if (!passedRecordList.isEmpty()) {
-      for (SearchHit searchHit : passedRecordList) {
-        listModel.addElement(searchHit);
-      }
-    }
+    //update the hits list (only hits that pass current filters)
+    ((HitsListModel) hitsJList.getModel()).setHits(facets.hits(passed), then);
 
-    updateTree(passedRecordList);
+    //update the counts next to checked tree nodes
+    updateTree(facets, passed);
   }
 
-  private void updateTree(List<SearchHit> hits) {
-    //update counts in the filter tree view/pane;
-    //but don't remove unchecked nodes and corresp. map keys:
-    numHitsByTypeMap.values().clear();
-    numHitsByOrganismMap.values().clear();
-    numHitsByDatasourceMap.values().clear();
-    for (SearchHit hit : hits) {
-      updateCategoryToCountMaps(hit);
-    }
-
-    //update counts (in CategoryCount) in each tree node
-    if (typeFilterEnabled) {
-      for (int i = 0; i < typeFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) typeFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        categoryCount.count = numHitsByTypeMap.get(categoryCount.id);
-      }
-    }
-    if (organismFilterEnabled) {
-      for (int i = 0; i < organismFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) organismFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        categoryCount.count = numHitsByOrganismMap.get(categoryCount.id);
-      }
-    }
-    if (datasourceFilterEnabled) {
-      for (int i = 0; i < dataSourceFilterNode.getChildCount(); i++) {
-        CheckNode checkNode = (CheckNode) dataSourceFilterNode.getChildAt(i);
-        CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
-        categoryCount.count = numHitsByDatasourceMap.get(categoryCount.id);
+  // ids of the checked category nodes
+  private static Set<String> selectedIds(CheckNode filterNode) {
+    Set<String> ids = new HashSet<String>();
+    for (int i = 0; i < filterNode.getChildCount(); i++) {
+      CheckNode checkNode = (CheckNode) filterNode.getChildAt(i);
+      CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
+      if (checkNode.isSelected()) { // - checked
+        ids.add(categoryCount.id);
       }
     }
+    return ids;
+  }
+
+  private void updateTree(HitsFacets facets, BitSet hits) {
+    //update counts (in CategoryCount) in each tree node;
+    //but don't remove unchecked nodes
+    if (typeFilterEnabled)
+      updateCounts(typeFilterNode, Facet.TYPE, facets, hits);
+    if (organismFilterEnabled)
+      updateCounts(organismFilterNode, Facet.ORGANISM, facets, hits);
+    if (datasourceFilterEnabled)
+      updateCounts(dataSourceFilterNode, Facet.DATASOURCE, facets, hits);
 
     filterTreePanel.repaint();
   }
 
+  private static void updateCounts(CheckNode filterNode, Facet facet, HitsFacets facets, BitSet hits) {
+    for (int i = 0; i < filterNode.getChildCount(); i++) {
+      CheckNode checkNode = (CheckNode) filterNode.getChildAt(i);
+      CategoryCount categoryCount = (CategoryCount) checkNode.getUserObject();
+      categoryCount.count = facets.count(facet, categoryCount.id, hits);
+    }
+  }
+
 
   /**
    * Resets the tree view once the search result (hits) get updated
-   * (after a new search query executed).
+   * (after a new search query executed), or, when the next page hits are added
+   * (infinite scroll), adds the new values, updates the counts and re-applies the current filter.
    */
   @Override
   public void update(Observable o, Object arg) {
@@ -181,6 +145,11 @@ final class HitsFilterPanel extends JPanel implements Observer {
       return; //do nothing
     }
 
+    if (arg instanceof java.util.List) { //more hits of the same search
+      extend(model);
+      return;
+    }
+
     filterTreePanel.setVisible(false); //hide
 
     //cleanup, reset
@@ -191,13 +160,9 @@ final class HitsFilterPanel extends JPanel implements Observer {
     typeFilterNode = null;
     tree.setModel(new DefaultTreeModel(rootNode));
 
-    //initialize the numHitsBy* maps (counts):
-    numHitsByTypeMap.clear();
-    numHitsByOrganismMap.clear();
-    numHitsByDatasourceMap.clear();
-    for (SearchHit hit : model.getHits()) {
-      updateCategoryToCountMaps(hit);
-    }
+    //the facets index (counts)
+    final HitsFacets facets = model.getFacets();
+    final BitSet all = facets.all();
 
     //create filter tree nodes (CheckNode)
     typeFilterEnabled = (
@@ -208,37 +173,19 @@ final class HitsFilterPanel extends JPanel implements Observer {
       typeFilterNode = new CheckNode("BioPAX Type");
       rootNode.add(typeFilterNode);
       // Create BioPAX type filter nodes (leafs)
-      for (String key : numHitsByTypeMap.keySet()) {
-        CategoryCount categoryCount = new CategoryCount(key, key, numHitsByTypeMap.get(key));
-        CheckNode typeNode = new CheckNode(categoryCount, false, true);
-        typeFilterNode.add(typeNode);
-      }
+      addValueNodes(typeFilterNode, Facet.TYPE, facets, all);
     } else typeFilterNode = null;
 
     if (organismFilterEnabled) {
       organismFilterNode = new CheckNode("Organism");
       rootNode.add(organismFilterNode);
-      for (String key : numHitsByOrganismMap.keySet()) {
-        String name = App.uriToOrganismNameMap.get(key);
-        if (name == null)
-          name = key;
-        CategoryCount categoryCount = new CategoryCount(key, name, numHitsByOrganismMap.get(key));
-        CheckNode organismNode = new CheckNode(categoryCount, false, true);
-        organismFilterNode.add(organismNode);
-      }
+      addValueNodes(organismFilterNode, Facet.ORGANISM, facets, all);
     } else organismFilterNode = null;
 
     if (datasourceFilterEnabled) {
       dataSourceFilterNode = new CheckNode("Datasource");
       rootNode.add(dataSourceFilterNode);
-      for (String key : numHitsByDatasourceMap.keySet()) {
-        String name = App.uriToDatasourceNameMap.get(key);
-        if (name == null)
-          name = key;
-        CategoryCount categoryCount = new CategoryCount(key, name, numHitsByDatasourceMap.get(key));
-        CheckNode dataSourceNode = new CheckNode(categoryCount, false, true);
-        dataSourceFilterNode.add(dataSourceNode);
-      }
+      addValueNodes(dataSourceFilterNode, Facet.DATASOURCE, facets, all);
     } else dataSourceFilterNode = null;
 
 
@@ -265,169 +212,54 @@ final class HitsFilterPanel extends JPanel implements Observer {
     filterTreePanel.setVisible(true);
   }
 
-  private void updateCategoryToCountMaps(final SearchHit hit) {
-    // catalog/organize hit counts by type, organism, source -
-    String type = hit.getBiopaxClass();
-    Integer count = numHitsByTypeMap.get(type);
-    if (count != null) {
-      numHitsByTypeMap.put(type, count + 1);
-    } else {
-      numHitsByTypeMap.put(type, 1);
-    }
-
-    for (String org : hit.getOrganism()) {
-      Integer i = numHitsByOrganismMap.get(org);
-      if (i != null) {
-        numHitsByOrganismMap.put(org, i + 1);
-      } else {
-        numHitsByOrganismMap.put(org, 1);
-      }
-    }
-
-    for (String ds : hit.getDataSource()) {
-      Integer i = numHitsByDatasourceMap.get(ds);
-      if (i != null) {
-        numHitsByDatasourceMap.put(ds, i + 1);
-      } else {
-        numHitsByDatasourceMap.put(ds, 1);
-      }
-    }
-  }
-
-  /**
-   * HitsFilter interface.
-   */
-  interface HitsFilter {
-    /**
-     * Filters the record list.  Those items which pass the filter
-     * are included in the returned list.
-     *
-     * @param recordList List of SearchHit Objects.
-     * @return
-     */
-    List<SearchHit> filter(List<SearchHit> recordList);
-  }
-
-
-  class ChainedFilter implements HitsFilter {
-    private ArrayList<HitsFilter> filterList = new ArrayList<HitsFilter>();
-
-    /**
-     * Adds a new filter.
-     *
-     * @param filter HitsFilter Object.
-     */
-    public void addFilter(HitsFilter filter) {
-      filterList.add(filter);
-    }
-
-    /**
-     * Filters the record list.  Those items which pass the filter
-     * are included in the returned list.
-     *
-     * @param recordList
-     * @return
-     */
-    public List<SearchHit> filter(List<SearchHit> recordList) {
-      for (HitsFilter filter : filterList) {
-        recordList = filter.filter(recordList);
-      }
-      return recordList;
+  // adds the (checked) nodes of the values there are no nodes for yet
+  private void addValueNodes(CheckNode filterNode, Facet facet, HitsFacets facets, BitSet hits) {
+    final Set<String> present = new HashSet<String>();
+    for (int i = 0; i < filterNode.getChildCount(); i++)
+      present.add(((CategoryCount) ((CheckNode) filterNode.getChildAt(i)).getUserObject()).id);
+    final Map<String, String> names = (facet == Facet.ORGANISM) ? App.metadata.uriToOrganismNameMap
+      : (facet == Facet.DATASOURCE) ? App.metadata.uriToDatasourceNameMap : Collections.<String, String>emptyMap();
+    for (String key : facets.values(facet)) {
+      if (present.contains(key))
+        continue;
+      String name = names.get(key);
+      if (name == null)
+        name = key;
+      filterNode.add(new CheckNode(new CategoryCount(key, name, facets.count(facet, key, hits)), false, true));
     }
   }
 
-
-  /**
-   * EntityType HitsFilter.
-   */
-  class EntityTypeFilter implements HitsFilter {
-    Set<String> entityTypeSet;
-
-    /**
-     * Constructor.
-     *
-     * @param entityTypeSet Set of Entity Types we want to keep.
-     */
-    public EntityTypeFilter(Set<String> entityTypeSet) {
-      this.entityTypeSet = entityTypeSet;
+  // the next page: keeps the checked/unchecked values, adds new ones (checked), and filters all the hits again
+  private void extend(final HitsModel model) {
+    // keep the selected hit selected
+    final Object selected = hitsJList.getSelectedValue();
+    final Runnable reselect = () -> {
+      if (selected != null)
+        hitsJList.setSelectedValue(selected, false);
+    };
+    if (tree.getModel() == null || rootNode.getChildCount() == 0) {
+      applyFilter(model, reselect); //no filters; shows all the hits
+      return;
     }
-
-    /**
-     * Filters the record list.  Those items which pass the filter
-     * are included in the returned list.
-     *
-     * @param recordList
-     * @return
-     */
-    public List<SearchHit> filter(List<SearchHit> recordList) {
-      ArrayList<SearchHit> passedList = new ArrayList<SearchHit>();
-      for (SearchHit record : recordList) {
-        String type = record.getBiopaxClass();
-        if (type != null) {
-          if (entityTypeSet.contains(type)) {
-            passedList.add(record);
-          }
-        }
+    final HitsFacets facets = model.getFacets();
+    final BitSet all = facets.all();
+    for (CheckNode filterNode : new CheckNode[]{typeFilterNode, organismFilterNode, dataSourceFilterNode}) {
+      if (filterNode == null)
+        continue;
+      final Facet facet = (filterNode == typeFilterNode) ? Facet.TYPE
+        : (filterNode == organismFilterNode) ? Facet.ORGANISM : Facet.DATASOURCE;
+      final int before = filterNode.getChildCount();
+      addValueNodes(filterNode, facet, facets, all);
+      if (filterNode.getChildCount() > before) {
+        final int[] added = new int[filterNode.getChildCount() - before];
+        for (int i = 0; i < added.length; i++)
+          added[i] = before + i;
+        ((DefaultTreeModel) tree.getModel()).nodesWereInserted(filterNode, added);
       }
-      return passedList;
     }
+    applyFilter(model, reselect);
   }
 
-
-  class DataSourceFilter implements HitsFilter {
-    final Set<String> dataSourceSet;
-
-    public DataSourceFilter(Set<String> dataSourceSet) {
-      this.dataSourceSet = dataSourceSet;
-    }
-
-    public List<SearchHit> filter(List<SearchHit> recordList) {
-      ArrayList<SearchHit> passedList = new ArrayList<SearchHit>();
-      for (SearchHit record : recordList) {
-        if (!record.getDataSource().isEmpty()) {
-          for (String ds : record.getDataSource()) {
-            if (dataSourceSet.contains(App.uriToDatasourceNameMap.get(ds))
-              || dataSourceSet.contains(ds)) {
-              passedList.add(record);
-              break;
-            }
-          }
-        } else {
-          passedList.add(record);
-        }
-      }
-      return passedList;
-    }
-  }
-
-
-  class OrganismFilter implements HitsFilter {
-    final Set<String> organismsSet;
-
-    public OrganismFilter(Set<String> organismsSet) {
-      this.organismsSet = organismsSet;
-    }
-
-    public List<SearchHit> filter(List<SearchHit> recordList) {
-      ArrayList<SearchHit> passedList = new ArrayList<SearchHit>();
-      for (SearchHit record : recordList) {
-        if (!record.getOrganism().isEmpty()) {
-          for (String ds : record.getOrganism()) {
-            String name = App.uriToOrganismNameMap.get(ds);
-            if (organismsSet.contains(ds) || (name != null && organismsSet.contains(name))) {
-              passedList.add(record);
-              break;
-            }
-          }
-        } else {
-          passedList.add(record);
-        }
-      }
-      return passedList;
-    }
-  }
-
-
   class CategoryCount {
     private final String name;
     private final String id;
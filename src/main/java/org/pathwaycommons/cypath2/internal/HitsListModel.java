@@ -0,0 +1,78 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchHit;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search hits list model: an immutable array of hits that is replaced as a whole
+ * (on the Swing event dispatch thread; the list is told which rows were removed, added and changed).
+ */
+final class HitsListModel extends AbstractListModel {
+  private static final long serialVersionUID = 1L;
+  private static final SearchHit[] EMPTY = new SearchHit[0];
+
+  // accessed on the EDT
+  private SearchHit[] hits = EMPTY;
+
+  /**
+   * Replaces the hits (can be called from any thread).
+   *
+   * @param newHits hits (copied)
+   * @param then    to run on the EDT after the list is updated; can be null
+   */
+  void setHits(List<SearchHit> newHits, final Runnable then) {
+    final SearchHit[] snapshot = newHits.toArray(new SearchHit[0]);
+    onEdt(() -> {
+      final int oldSize = hits.length;
+      final int common = Math.min(oldSize, snapshot.length);
+      hits = snapshot;
+      // first the tail (so that the selection there is cleared), then the rows both have
+      if (oldSize > snapshot.length)
+        fireIntervalRemoved(this, snapshot.length, oldSize - 1);
+      else if (snapshot.length > oldSize)
+        fireIntervalAdded(this, oldSize, snapshot.length - 1);
+      if (common > 0)
+        fireContentsChanged(this, 0, common - 1);
+      if (then != null)
+        then.run();
+    });
+  }
+
+  /**
+   * Adds the hits to the end of the list (can be called from any thread).
+   *
+   * @param moreHits hits (copied)
+   */
+  void addHits(List<SearchHit> moreHits) {
+    final SearchHit[] more = moreHits.toArray(new SearchHit[0]);
+    if (more.length == 0)
+      return;
+    onEdt(() -> {
+      final int oldSize = hits.length;
+      final SearchHit[] all = Arrays.copyOf(hits, oldSize + more.length);
+      System.arraycopy(more, 0, all, oldSize, more.length);
+      hits = all;
+      fireIntervalAdded(this, oldSize, all.length - 1);
+    });
+  }
+
+  @Override
+  public int getSize() {
+    return hits.length;
+  }
+
+  @Override
+  public Object getElementAt(int index) {
+    return hits[index];
+  }
+
+  private static void onEdt(Runnable r) {
+    if (SwingUtilities.isEventDispatchThread())
+      r.run();
+    else
+      SwingUtilities.invokeLater(r);
+  }
+}
@@ -1,7 +1,6 @@
 package org.pathwaycommons.cypath2.internal;
 
 import cpath.client.CPathClient.Direction;
-import cpath.client.util.CPathException;
 import cpath.client.query.*;
 import org.apache.commons.lang3.StringUtils;
 import org.cytoscape.work.TaskManager;
@@ -9,6 +8,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Contains information regarding the currently selected set of interaction bundles.
@@ -16,55 +18,165 @@ import java.util.*;
 final class HitsModel extends Observable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HitsModel.class);
+  // max source URIs per traverse query
+  private static final int TRAVERSE_BATCH_SIZE = 100;
+  // max cached summaries
+  private static final int MAX_SUMMARIES = 256;
   final String title;
-  final Map<String, String> hitsSummaryMap = new HashMap<String, String>();
+  // recently viewed hits' summaries (see getSummary)
+  final Map<String, String> hitsSummaryMap = Collections.synchronizedMap(
+    new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > MAX_SUMMARIES;
+      }
+    });
   final Map<String, Collection<NvpListItem>> hitsPathwaysMap = new HashMap<String, Collection<NvpListItem>>();
-  final Map<String, String> hitsDetailsMap = new HashMap<String, String>();
+  // filled by the background prefetch and on demand (see fetchDetails)
+  final Map<String, String> hitsDetailsMap = new ConcurrentHashMap<String, String>();
 
   // full-text search query parameter
   volatile String searchFor = "Interaction";
   // advanced (graph or multiple items import) query parameter
   volatile GraphType graphType = null;
   volatile Direction direction;
-  private SearchResponse response;
+  // the search result pages; loaded pages firstPage..lastPage are shown
+  private SearchPages pages;
+  private int firstPage;
+  private int lastPage;
+  private long numHits;
+  private int hitsPerPage;
+  private final List<SearchHit> hits = new ArrayList<SearchHit>();
+  // facet index of the hits, re-built when hits are replaced or added
+  private HitsFacets facets = new HitsFacets(Collections.<SearchHit>emptyList());
+  // incremented when the hits are replaced (not when a page is appended)
+  private int generation;
 
   public HitsModel(String title, TaskManager taskManager) {
     this.title = title;
   }
 
   //no. hits, if any
-  int getNumRecords() {
-    if (response != null) {
-      return response.getSearchHit().size();
-    } else {
-      return 0;
-    }
+  synchronized int getNumRecords() {
+    return hits.size();
   }
 
   /**
    * Refresh the model and notify all observers INFO_ABOUT it's changed.
    *
-   * @param response
+   * @param pages    the search result pages
+   * @param response a page of the result
    */
-  public synchronized void update(final SearchResponse response) {
+  public synchronized void update(final SearchPages pages, final SearchResponse response) {
     this.hitsSummaryMap.clear();
     this.hitsPathwaysMap.clear();
     this.hitsDetailsMap.clear();
 
     // reset to use the new search results
-    this.response = response;
+    this.pages = pages;
+    this.hits.clear();
+    this.generation++;
+    this.firstPage = SearchPages.pageNo(response);
+    this.lastPage = firstPage;
+    this.numHits = (response.getNumHits() != null) ? response.getNumHits() : response.getSearchHit().size();
+    this.hitsPerPage = (response.getMaxHitsPerPage() != null) ? response.getMaxHitsPerPage() : 0;
 
-    // get and save the summary info for each hit
-    for (final SearchHit hit : getHits()) {
-      summarize(hit);
-    }
+    addHits(response.getSearchHit());
 
     // notify observers (panels and jlists)
     HitsModel.this.setChanged();
     HitsModel.this.notifyObservers(response);
+
+    loadMore(response.getSearchHit());
+  }
+
+  /**
+   * Adds the next page hits (infinite scroll) and notifies all observers
+   * (with the list of new hits).
+   *
+   * @param pages    the search result pages
+   * @param response the page after the last one shown
+   */
+  public synchronized void append(final SearchPages pages, final SearchResponse response) {
+    if (pages != this.pages || SearchPages.pageNo(response) != lastPage + 1)
+      return; //another search or page is shown now
+
+    lastPage++;
+    addHits(response.getSearchHit());
+
+    HitsModel.this.setChanged();
+    HitsModel.this.notifyObservers(new ArrayList<SearchHit>(response.getSearchHit()));
+
+    loadMore(response.getSearchHit());
+  }
+
+  synchronized HitsFacets getFacets() {
+    return facets;
+  }
+
+  synchronized SearchPages getPages() {
+    return pages;
+  }
+
+  synchronized int getFirstPage() {
+    return firstPage;
+  }
+
+  synchronized int getLastPage() {
+    return lastPage;
+  }
+
+  synchronized boolean hasNextPage() {
+    return pages != null && lastPage + 1 < pages.numPages();
   }
 
-  private void summarize(final SearchHit hit) {
+  synchronized boolean hasPrevPage() {
+    return pages != null && firstPage > 0;
+  }
+
+  // e.g., "Total hits: 1234 (101..300 are shown)"
+  synchronized String getNumHitsMessage() {
+    String msg = "Total hits:  " + numHits;
+    if (numHits > hits.size() && !hits.isEmpty()) {
+      final long first = (long) firstPage * hitsPerPage;
+      msg += String.format(" (%d..%d are shown)", first + 1, first + hits.size());
+    }
+    return msg;
+  }
+
+  // re-use the details seen before (summaries are made on demand), and index the hits
+  private void addHits(List<SearchHit> pageHits) {
+    for (final SearchHit hit : pageHits) {
+      hits.add(hit);
+      if (App.detailsCache != null) {
+        String html = App.detailsCache.get(detailsKey(hit.getUri(), searchFor));
+        if (html != null)
+          hitsDetailsMap.put(hit.getUri(), html);
+      }
+    }
+    facets = new HitsFacets(new ArrayList<SearchHit>(hits));
+  }
+
+  // get the details of the new hits, and the next page, in the background
+  private void loadMore(final List<SearchHit> pageHits) {
+    final String searchFor = this.searchFor;
+    final int generation = this.generation;
+    AppExecutors.execute(AppExecutors.Lane.BACKGROUND, AppExecutors.NORMAL,
+      () -> prefetchDetails(pageHits, searchFor, generation));
+    pages.prefetch(lastPage + 1);
+  }
+
+  /**
+   * Gets or makes the hit's summary (html).
+   *
+   * @param hit search hit
+   * @return summary
+   */
+  String getSummary(final SearchHit hit) {
+    return hitsSummaryMap.computeIfAbsent(hit.getUri(), uri -> summarize(hit));
+  }
+
+  private static String summarize(final SearchHit hit) {
     // get/create and show hit's summary
     final String uri = hit.getUri();
     StringBuilder html = new StringBuilder();
@@ -90,7 +202,7 @@ final class HitsModel extends Observable {
     if (items != null && !items.isEmpty()) {
       html.append("<h3>Data sources:</h3>");
       for (String it : items) {
-        String name = App.uriToDatasourceNameMap.get(it);
+        String name = App.metadata.uriToDatasourceNameMap.get(it);
         name = (name == null || name.isEmpty()) ? it : name;
         html.append(name).append("<br/>");
       }
@@ -101,7 +213,7 @@ final class HitsModel extends Observable {
     if (items != null && !items.isEmpty()) {
       html.append("<h3>Organisms:</h3>");
       for (String it : items) {
-        String name = App.uriToOrganismNameMap.get(it);
+        String name = App.metadata.uriToOrganismNameMap.get(it);
         name = (name == null || name.isEmpty()) ? it : name;
         html.append(name).append("<br/>");
       }
@@ -110,7 +222,7 @@ final class HitsModel extends Observable {
     html.append("<br/><strong>URI :</strong> ").append(uri);
     html.append("</html>");
 
-    hitsSummaryMap.put(uri, html.toString());
+    return html.toString();
   }
 
 
@@ -127,48 +239,130 @@ final class HitsModel extends Observable {
     if (hitsDetailsMap.containsKey(uri))
       return hitsDetailsMap.get(uri);
 
-    StringBuilder html = new StringBuilder("<html>");
+    final Set<String> uris = Collections.singleton(uri);
+
+    // independent queries run concurrently (only the member URIs one waits for the member names)
+    //is the hit just an unused protein/molecule reference from the Warehouse?
+    final CompletableFuture<Map<String, List<String>>> referenceOf = (searchFor.equalsIgnoreCase("EntityReference"))
+      ? traverseAsync("EntityReference/entityReferenceOf", uris) : CompletableFuture.completedFuture(null);
+    //parent pathways' names and components
+    final Set<String> ppwUris = (listsParentPathways(hit))
+      ? new HashSet<String>(hit.getPathway()) : Collections.<String>emptySet();
+    final CompletableFuture<Map<String, List<String>>> ppwNames = traverseAsync("Named/displayName", ppwUris);
+    final CompletableFuture<Map<String, List<String>>> ppwComponents = traverseAsync("Pathway/pathwayComponent", ppwUris);
+    //members' names, or else (no names?) - uris
+    final String path = membersPath(hit, searchFor);
+    final CompletableFuture<Map<String, List<String>>> members = traverseAsync(path + ":Named/displayName", uris)
+      .thenCompose(names -> (names != null && names.containsKey(uri))
+        ? CompletableFuture.completedFuture(names) : traverseAsync(path, uris));
+
+    // make the html when all done
+    final String html = CompletableFuture.allOf(referenceOf, ppwNames, ppwComponents, members)
+      .thenApply(v -> (referenceOf.join() != null && isEmpty(referenceOf.join(), uri))
+        ? unusedReferenceHtml(hit)
+        : detailsHtml(hit, orEmpty(ppwNames.join()), orEmpty(ppwComponents.join()),
+        orEmpty(members.join()).get(uri)))
+      .join();
+
+    //store for re-using later (in other searches too, unless a query failed)
+    hitsDetailsMap.put(uri, html);
+    if (App.detailsCache != null && ppwNames.join() != null && ppwComponents.join() != null
+      && members.join() != null && (referenceOf.join() != null || !searchFor.equalsIgnoreCase("EntityReference")))
+      App.detailsCache.put(detailsKey(uri, searchFor), html);
+
+    return html;
+  }
+
+  /*
+   * Gets the details of all the hits on the page with a few batch traverse queries
+   * (rather than several queries per hit, when it's clicked) and stores them in hitsDetailsMap.
+   * Stops when the page is replaced by another search result or a query fails
+   * (then fetchDetails gets the rest on demand).
+   */
+  private void prefetchDetails(final List<SearchHit> pageHits, final String searchFor, final int generation) {
+    final List<SearchHit> hits = new ArrayList<SearchHit>();
+    for (SearchHit hit : pageHits) {
+      if (!hitsDetailsMap.containsKey(hit.getUri())) // not from the cache
+        hits.add(hit);
+    }
+    if (hits.isEmpty())
+      return;
+
+    final long start = System.currentTimeMillis();
+    final Set<String> hitUris = new HashSet<String>();
+    final Set<String> ppwUris = new HashSet<String>();
+    final Map<String, Set<String>> membersPathToUris = new HashMap<String, Set<String>>();
+    for (SearchHit hit : hits) {
+      hitUris.add(hit.getUri());
+      if (listsParentPathways(hit))
+        ppwUris.addAll(hit.getPathway());
+      membersPathToUris.computeIfAbsent(membersPath(hit, searchFor), k -> new HashSet<String>())
+        .add(hit.getUri());
+    }
 
-    //shortcut when the hit is just an unused protein/molecule reference from the Warehouse
+    Map<String, List<String>> referenceOf = null;
     if (searchFor.equalsIgnoreCase("EntityReference")) {
-      TraverseResponse res = traverse("EntityReference/entityReferenceOf", Collections.singleton(uri));
-      if (res == null || res.isEmpty()) {
-        html.append("This standard ").append(hit.getBiopaxClass())
-          .append(" is not part of any bio-network currently loaded in the server.</html>");
-        hitsDetailsMap.put(uri, html.toString());
-        return hitsDetailsMap.get(uri);
-      }
+      referenceOf = traverseAll("EntityReference/entityReferenceOf", hitUris);
+      if (referenceOf == null || !isCurrent(generation))
+        return;
     }
 
-    //list parent pathways
-    if (!hit.getPathway().isEmpty() && //and unless the only parent is this same pathway
-      !(hit.getPathway().size() == 1 && uri.equalsIgnoreCase(hit.getPathway().get(0)))) {
-      html.append("<h3>Parent Pathways:</h3><ul>");
-      final Set<String> ppwUris = new HashSet<String>(hit.getPathway()); // a hack for not unique URIs (a cpath2 indexing bug...)
-      TraverseResponse ppwNames = traverse("Named/displayName", ppwUris);
-      if (ppwNames != null) {
-        Map<String, String> ppwUriToNameMap = new HashMap<String, String>();
-        for (TraverseEntry e : ppwNames.getTraverseEntry()) {
-          String name = (e.getValue().isEmpty()) ? e.getUri() : e.getValue().get(0);
-          ppwUriToNameMap.put(e.getUri(), name);
-        }
-        // add parent pathways's components counts
-        TraverseResponse ppwComponents = traverse("Pathway/pathwayComponent", ppwUris); // this gets URIs of pathways
-        for (TraverseEntry e : ppwComponents.getTraverseEntry()) {
-          String name = ppwUriToNameMap.get(e.getUri());
-          ppwUriToNameMap.put(e.getUri(), name + " (" + e.getValue().size() + " processes)");
-        }
+    final Map<String, List<String>> ppwNames = traverseAll("Named/displayName", ppwUris);
+    if (ppwNames == null || !isCurrent(generation))
+      return;
+    final Map<String, List<String>> ppwComponents = traverseAll("Pathway/pathwayComponent", ppwUris);
+    if (ppwComponents == null || !isCurrent(generation))
+      return;
+
+    final Map<String, List<String>> members = new HashMap<String, List<String>>();
+    for (Map.Entry<String, Set<String>> e : membersPathToUris.entrySet()) {
+      final Map<String, List<String>> names = traverseAll(e.getKey() + ":Named/displayName", e.getValue());
+      if (names == null || !isCurrent(generation))
+        return;
+      members.putAll(names);
+      final Set<String> unnamed = new HashSet<String>(e.getValue());
+      unnamed.removeAll(names.keySet());
+      final Map<String, List<String>> memberUris = traverseAll(e.getKey(), unnamed);
+      if (memberUris == null || !isCurrent(generation))
+        return;
+      members.putAll(memberUris);
+    }
 
-        // create html links
-        for (String ppwUri : ppwUriToNameMap.keySet()) {
-          html.append("<li><a href='").append(ppwUri).append("'>")
-            .append(ppwUriToNameMap.get(ppwUri)).append("</a></li>");
-        }
+    for (SearchHit hit : hits) {
+      final String uri = hit.getUri();
+      final String html = (referenceOf != null && isEmpty(referenceOf, uri))
+        ? unusedReferenceHtml(hit)
+        : detailsHtml(hit, ppwNames, ppwComponents, members.get(uri));
+      synchronized (this) {
+        if (this.generation != generation)
+          return;
+        hitsDetailsMap.putIfAbsent(uri, html);
+        if (App.detailsCache != null)
+          App.detailsCache.put(detailsKey(uri, searchFor), html);
       }
-      html.append("</ul>");
     }
 
-    // list members (if any)
+    LOGGER.debug("Prefetched details of " + hits.size() + " hits in "
+      + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  // the details cache key (for the current search filters)
+  private synchronized String detailsKey(String uri, String searchFor) {
+    return DetailsCache.key(uri, searchFor, pages.datasources, pages.organisms);
+  }
+
+  private synchronized boolean isCurrent(int generation) {
+    return this.generation == generation;
+  }
+
+  //unless the only parent is this same pathway
+  private static boolean listsParentPathways(SearchHit hit) {
+    return !hit.getPathway().isEmpty() &&
+      !(hit.getPathway().size() == 1 && hit.getUri().equalsIgnoreCase(hit.getPathway().get(0)));
+  }
+
+  //the property path to the hit's members
+  private static String membersPath(SearchHit hit, String searchFor) {
     String path = null;
     if ("Pathway".equalsIgnoreCase(hit.getBiopaxClass()))
       path = "Pathway/pathwayComponent";
@@ -181,50 +375,101 @@ final class HitsModel extends Observable {
     else if (searchFor.equalsIgnoreCase("EntityReference"))
       path = "EntityReference/memberEntityReference";
     assert (path != null);
+    return path;
+  }
 
-    // request members's names
-    TraverseResponse members = traverse(path + ":Named/displayName",
-      Collections.singleton(uri));
-    if (members == null) // no names? - get uris then
-      members = traverse(path, Collections.singleton(uri));
-
-    if (members != null) {
-      List<String> values = members.getTraverseEntry().get(0).getValue();
-      if (!values.isEmpty())
-        html.append("<h3>Contains ").append(values.size())
-          .append(" (direct) members:</h3>")
-          .append(StringUtils.join(values, "<br/>"));
+  private static String unusedReferenceHtml(SearchHit hit) {
+    return "<html>This standard " + hit.getBiopaxClass()
+      + " is not part of any bio-network currently loaded in the server.</html>";
+  }
+
+  /*
+   * Makes the Details html from the traverse results
+   * (parent pathway URI to names and to components; member names or URIs).
+   */
+  private static String detailsHtml(SearchHit hit, Map<String, List<String>> ppwNames,
+                                    Map<String, List<String>> ppwComponents, List<String> members) {
+    StringBuilder html = new StringBuilder("<html>");
+
+    //list parent pathways
+    if (listsParentPathways(hit)) {
+      html.append("<h3>Parent Pathways:</h3><ul>");
+      // a hack for not unique URIs (a cpath2 indexing bug...)
+      for (String ppwUri : new LinkedHashSet<String>(hit.getPathway())) {
+        List<String> names = ppwNames.get(ppwUri);
+        if (names == null)
+          continue;
+        String name = (names.isEmpty()) ? ppwUri : names.get(0);
+        List<String> components = ppwComponents.get(ppwUri);
+        if (components != null)
+          name += " (" + components.size() + " processes)";
+        // create html links
+        html.append("<li><a href='").append(ppwUri).append("'>")
+          .append(name).append("</a></li>");
+      }
+      html.append("</ul>");
     }
 
-    html.append("</html>");
+    // list members (if any)
+    if (members != null && !members.isEmpty())
+      html.append("<h3>Contains ").append(members.size())
+        .append(" (direct) members:</h3>")
+        .append(StringUtils.join(members, "<br/>"));
 
-    //store for re-using later
-    hitsDetailsMap.put(uri, html.toString());
+    html.append("</html>");
+    return html.toString();
+  }
 
-    return hitsDetailsMap.get(uri);
+  /*
+   * Traverses from many URIs at once (in batches).
+   * Returns the source URI to values map (URIs without results are not there),
+   * or null when a query fails.
+   */
+  private static Map<String, List<String>> traverseAll(String path, Set<String> uris) {
+    return traverseAsync(path, uris).join();
   }
 
+  // same as traverseAll, but the batch queries run concurrently, in the background
+  private static CompletableFuture<Map<String, List<String>>> traverseAsync(String path, Set<String> uris) {
+    final List<String> sources = new ArrayList<String>(new TreeSet<String>(uris));
+    final List<CompletableFuture<TraverseResponse>> batches = new ArrayList<CompletableFuture<TraverseResponse>>();
+    for (int from = 0; from < sources.size(); from += TRAVERSE_BATCH_SIZE) {
+      final List<String> batch = sources.subList(from, Math.min(from + TRAVERSE_BATCH_SIZE, sources.size()));
+      if (LOGGER.isDebugEnabled())
+        LOGGER.debug("traverse: path=" + path + ", " + batch.size() + " uris");
+      batches.add(CPathRequests.traverseAsync(path, batch));
+    }
 
-  private TraverseResponse traverse(String path, Set<String> uris) {
-    if (LOGGER.isDebugEnabled())
-      LOGGER.debug("traverse: path=" + path);
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+      if (e != null) {
+        LOGGER.error("traverse: " + path + " failed; uris:" + sources,
+          (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+        return null;
+      }
+      final Map<String, List<String>> values = new HashMap<String, List<String>>();
+      for (CompletableFuture<TraverseResponse> batch : batches) {
+        TraverseResponse res = batch.join();
+        if (res != null && res.getTraverseEntry() != null) {
+          for (TraverseEntry entry : res.getTraverseEntry())
+            values.put(entry.getUri(), entry.getValue());
+        }
+      }
+      return values;
+    });
+  }
 
-    TraverseResponse res = null;
-    try {
-      res = App.client.createTraverseQuery()
-        .propertyPath(path)
-        .sources(uris)
-        .result();
-    } catch (CPathException e) {
-      LOGGER.error("traverse: " + path +
-        " failed; uris:" + uris.toString(), e);
-    }
+  private static Map<String, List<String>> orEmpty(Map<String, List<String>> values) {
+    return (values != null) ? values : Collections.<String, List<String>>emptyMap();
+  }
 
-    return res;
+  private static boolean isEmpty(Map<String, List<String>> values, String uri) {
+    return values == null || values.get(uri) == null || values.get(uri).isEmpty();
   }
 
   //Gets current search hits list
   List<SearchHit> getHits() {
-    return (response != null) ? response.getSearchHit() : Collections.emptyList();
+    synchronized (this) {
+      return new ArrayList<SearchHit>(hits);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchHit;
+import cpath.client.query.SearchResponse;
+import cpath.client.util.CPathException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * An immutable snapshot of the server metadata: datasource (Provenance) and organism URI to name maps,
+ * and the datasources fingerprint; can be saved to and loaded from a local file,
+ * so that the app does not wait for the server at startup.
+ */
+final class Metadata {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Metadata.class);
+  private static final String DATASOURCE = "datasource.";
+  private static final String ORGANISM = "organism.";
+  private static final String FINGERPRINT = "datasourcesFingerprint";
+
+  static final Metadata EMPTY = new Metadata(null, "",
+    Collections.<String, String>emptyMap(), Collections.<String, String>emptyMap());
+
+  final String server;
+  // server URL and a hash of its datasources (URIs, names) - the client does not get the server data version;
+  // changes with the datasources list, but not when a release only updates the data of the same datasources
+  final String datasourcesFingerprint;
+  final Map<String, String> uriToDatasourceNameMap;
+  final Map<String, String> uriToOrganismNameMap;
+
+  private Metadata(String server, String datasourcesFingerprint,
+                   Map<String, String> uriToDatasourceNameMap, Map<String, String> uriToOrganismNameMap) {
+    this.server = server;
+    this.datasourcesFingerprint = datasourcesFingerprint;
+    this.uriToDatasourceNameMap = Collections.unmodifiableMap(uriToDatasourceNameMap);
+    this.uriToOrganismNameMap = Collections.unmodifiableMap(uriToOrganismNameMap);
+  }
+
+  /**
+   * Gets the metadata from the server (blocking).
+   *
+   * @return new snapshot
+   * @throws CPathException when the request fails
+   */
+  static Metadata fetch() throws CPathException {
+    SearchResponse res = CPathRequests.call(
+      new CPathRequests.KeyBuilder("search").add("type", "Provenance").add("page", "all").toString(),
+      () -> App.client.createSearchQuery()
+        .typeFilter("Provenance")
+        .allPages() //sets .queryString("*") automatically
+        .result());
+    Map<String, String> datasources = new LinkedHashMap<String, String>();
+    for (SearchHit bs : res.getSearchHit()) {
+      datasources.put(bs.getUri(), bs.getName());
+    }
+    Map<String, String> organisms = new LinkedHashMap<String, String>();
+    organisms.put("http://identifiers.org/taxonomy/9606", "Homo sapiens");
+    final String server = App.client.getEndPointURL();
+    return new Metadata(server, server + "#"
+      + Integer.toHexString(new TreeMap<String, String>(datasources).toString().hashCode()),
+      datasources, organisms);
+  }
+
+  /**
+   * Loads the saved snapshot.
+   *
+   * @param file   local copy
+   * @param server current server URL
+   * @return the snapshot or null when there is none (for this server) or it cannot be read
+   */
+  static Metadata load(File file, String server) {
+    if (file == null || !file.isFile())
+      return null;
+    final Properties props = new Properties();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      props.load(in);
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.warn("Failed to load the metadata from " + file + ": " + e);
+      return null;
+    }
+    if (!server.equals(props.getProperty("server")) || props.getProperty(FINGERPRINT) == null)
+      return null;
+
+    final Map<String, String> datasources = new LinkedHashMap<String, String>();
+    final Map<String, String> organisms = new LinkedHashMap<String, String>();
+    for (String name : new TreeSet<String>(props.stringPropertyNames())) {
+      if (name.startsWith(DATASOURCE))
+        datasources.put(name.substring(DATASOURCE.length()), props.getProperty(name));
+      else if (name.startsWith(ORGANISM))
+        organisms.put(name.substring(ORGANISM.length()), props.getProperty(name));
+    }
+    LOGGER.info("Loaded the metadata (datasources " + props.getProperty(FINGERPRINT)
+      + ", saved " + props.getProperty("saved") + ")");
+    return new Metadata(server, props.getProperty(FINGERPRINT), datasources, organisms);
+  }
+
+  /**
+   * Writes the snapshot to the file (replacing it at once).
+   *
+   * @param file local copy
+   */
+  void save(File file) {
+    final Properties props = new Properties();
+    props.setProperty("server", server);
+    props.setProperty(FINGERPRINT, datasourcesFingerprint);
+    props.setProperty("saved", new Date().toString());
+    for (Map.Entry<String, String> e : uriToDatasourceNameMap.entrySet())
+      props.setProperty(DATASOURCE + e.getKey(), String.valueOf(e.getValue()));
+    for (Map.Entry<String, String> e : uriToOrganismNameMap.entrySet())
+      props.setProperty(ORGANISM + e.getKey(), String.valueOf(e.getValue()));
+
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("metadata", ".tmp", file.getAbsoluteFile().getParentFile());
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+        props.store(out, "PathwayCommons server metadata");
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to save the metadata to " + file + ": " + e);
+      if (tmp != null)
+        tmp.delete();
+    }
+  }
+}
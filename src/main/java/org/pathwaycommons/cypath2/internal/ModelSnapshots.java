@@ -0,0 +1,349 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.biopax.paxtools.controller.AbstractPropertyEditor;
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Binary snapshots of BioPAX models that were read from RDF/XML,
+ * upgraded to Level3 and fixed by {@link BioPaxMapper#read(InputStream)},
+ * keyed by what identifies the source data: the SHA-256 digest of the data (see {@link #contentKey(String)}),
+ * or the file path, size and modification time (see {@link #fileKey(File)});
+ * so that importing the same data again does not parse the XML again (the data are not even opened).
+ */
+final class ModelSnapshots {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ModelSnapshots.class);
+  private static final String SUFFIX = ".model";
+  private static final String TMP_SUFFIX = ".tmp";
+  // snapshots made by a different version of this class are not used
+  // (those with unknown BioPAX types or properties fail to load, and are deleted)
+  private static final String FORMAT = "cypath2-model-4";
+  private static final String CONTENT = "sha256:";
+
+  private final File dir;
+  private final long maxBytes;
+  private final Executor executor;
+
+  /**
+   * @param dir      snapshots directory
+   * @param maxBytes total size limit (the oldest snapshots are deleted)
+   * @param executor to write new snapshots in the background
+   */
+  ModelSnapshots(File dir, long maxBytes, Executor executor) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.executor = executor;
+    if (!dir.isDirectory() && !dir.mkdirs())
+      LOGGER.warn("Cannot create the model snapshots directory " + dir);
+    File[] tmpFiles = dir.listFiles((d, name) -> name.endsWith(TMP_SUFFIX));
+    if (tmpFiles != null) {
+      for (File f : tmpFiles)
+        f.delete(); //incomplete
+    }
+  }
+
+  /**
+   * A model and its new snapshot, if any, to save.
+   */
+  final class Result {
+    final Model model;
+    // where to save the snapshot; null - nothing to save (loaded from the snapshot, or the data are not identified)
+    private File file;
+
+    private Result(Model model, File file) {
+      this.model = model;
+      this.file = file;
+    }
+
+    /**
+     * Writes the snapshot in the background (once), if it's new;
+     * call it only if the model is not going to be modified (by this or another thread).
+     */
+    void save() {
+      final File f = file;
+      file = null;
+      if (f == null || model == null)
+        return;
+      try {
+        executor.execute(() -> ModelSnapshots.this.save(model, f));
+      } catch (RejectedExecutionException e) {
+        LOGGER.debug("No model snapshot this time: " + e); //e.g., too busy
+      }
+    }
+  }
+
+  /**
+   * Loads the model from its snapshot, if there is one for this data,
+   * or else opens and reads the BioPAX data.
+   *
+   * @param key  source data key (see {@link #fileKey(File)}, {@link #contentKey(String)});
+   *             null - do not use snapshots
+   * @param data opens the BioPAX RDF/XML (only when there's no snapshot; the caller closes the stream)
+   * @return the model (can be null when there is no data) and its snapshot to save
+   * @throws Exception when opening or reading the input fails
+   */
+  Result read(String key, Callable<InputStream> data) throws Exception {
+    if (key == null)
+      return new Result(parse(data.call()), null);
+
+    if (!CONTENT.equals(key)) { //identified data (the digest is known)
+      final File file = snapshotFile(key);
+      if (file.isFile()) {
+        Model model = load(file);
+        if (model != null)
+          return new Result(model, null);
+      }
+    }
+
+    final InputStream in = data.call();
+    if (!key.startsWith(CONTENT))
+      return new Result(parse(in), snapshotFile(key));
+
+    // the key is the digest of what's actually read (the data may have changed)
+    if (in == null)
+      return new Result(null, null);
+    final MessageDigest md = sha256();
+    final QueryStreams.EndAwareInputStream digested = new QueryStreams.EndAwareInputStream(new DigestInputStream(in, md));
+    final Model model = parse(digested);
+    if (model == null)
+      return new Result(null, null);
+    QueryStreams.drain(digested);
+    return new Result(model, (digested.atEnd()) ? snapshotFile(contentKey(toHex(md.digest()))) : null);
+  }
+
+  /**
+   * @param file local file
+   * @return snapshot key of the file (changes when the file does)
+   */
+  static String fileKey(File file) {
+    return "file:" + file.getAbsolutePath() + "#" + file.length() + "#" + file.lastModified();
+  }
+
+  /**
+   * @param digest SHA-256 (hex) of the data (e.g., see {@link QueryCache#digest(String)}),
+   *               or null when it's not known before reading the data (then it's computed while reading)
+   * @return snapshot key of the data
+   */
+  static String contentKey(String digest) {
+    return CONTENT + ((digest != null) ? digest : "");
+  }
+
+  private static Model parse(InputStream in) throws IOException {
+    return (in != null) ? BioPaxMapper.read(in) : null;
+  }
+
+  private File snapshotFile(String key) {
+    return new File(dir, toHex(sha256().digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX);
+  }
+
+  private Model load(File file) {
+    final long start = System.currentTimeMillis();
+    try (DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      if (!FORMAT.equals(in.readUTF()))
+        throw new IOException("Outdated snapshot format");
+      Model model = readModel(in);
+      file.setLastModified(System.currentTimeMillis()); //recently used
+      LOGGER.info("Loaded the model snapshot " + file.getName()
+        + " in " + (System.currentTimeMillis() - start) + " ms");
+      return model;
+    } catch (Throwable e) { //also OutOfMemoryError (huge model), unknown BioPAX types or properties
+      LOGGER.warn("Failed to load the model snapshot " + file.getName() + " (will delete): " + e);
+      file.delete();
+      return null;
+    }
+  }
+
+  private void save(Model model, File file) {
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("model", TMP_SUFFIX, dir);
+      try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+        out.writeUTF(FORMAT);
+        writeModel(model, out);
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      LOGGER.info("Saved the model snapshot " + file.getName());
+      evict();
+    } catch (Throwable e) { //also OutOfMemoryError; the model is fine, there is no snapshot
+      LOGGER.warn("Failed to save the model snapshot " + file.getName() + ": " + e);
+      if (tmp != null)
+        tmp.delete();
+    }
+  }
+
+  /*
+   * The snapshot is the model's elements (type, URI), followed by their property values -
+   * other elements (by number), or the text values as the RDF/XML reader would parse them
+   * (paxtools models are not Java-serializable, e.g., their BiopaxSafeSet collections).
+   */
+  private static void writeModel(Model model, DataOutputStream out) throws IOException {
+    final EditorMap editors = SimpleEditorMap.get(model.getLevel());
+    out.writeUTF(model.getLevel().name());
+    writeString(out, model.getXmlBase());
+    final Map<String, String> prefixes = model.getNameSpacePrefixMap();
+    out.writeInt(prefixes.size());
+    for (Map.Entry<String, String> e : prefixes.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue());
+    }
+
+    final List<BioPAXElement> elements = new ArrayList<>(model.getObjects());
+    final Map<BioPAXElement, Integer> numbers = new IdentityHashMap<>(elements.size());
+    out.writeInt(elements.size());
+    for (BioPAXElement e : elements) {
+      numbers.put(e, numbers.size());
+      out.writeUTF(e.getModelInterface().getSimpleName());
+      writeString(out, e.getUri());
+    }
+
+    final List<Object> values = new ArrayList<>();
+    for (BioPAXElement e : elements) {
+      final Set<PropertyEditor> props = editors.getEditorsOf(e);
+      int count = 0;
+      for (PropertyEditor editor : props)
+        if (!values(editor, e, numbers, values).isEmpty())
+          count++;
+      out.writeInt(count);
+      for (PropertyEditor editor : props) {
+        if (values(editor, e, numbers, values).isEmpty())
+          continue;
+        out.writeUTF(editor.getProperty());
+        out.writeInt(values.size());
+        for (Object v : values) {
+          if (editor instanceof ObjectPropertyEditor)
+            out.writeInt((Integer) v);
+          else
+            writeString(out, String.valueOf(v));
+        }
+      }
+    }
+  }
+
+  // known values of the property (element numbers - for object properties; references outside the model are skipped)
+  private static List<Object> values(PropertyEditor editor, BioPAXElement e,
+                                     Map<BioPAXElement, Integer> numbers, List<Object> values) {
+    values.clear();
+    for (Object v : (Set<?>) editor.getValueFromBean(e)) {
+      if (v == null || editor.isUnknown(v))
+        continue;
+      if (editor instanceof ObjectPropertyEditor) {
+        Integer n = numbers.get(v);
+        if (n != null)
+          values.add(n);
+      } else {
+        values.add(v);
+      }
+    }
+    return values;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Model readModel(DataInputStream in) throws IOException {
+    final BioPAXLevel level = BioPAXLevel.valueOf(in.readUTF());
+    final EditorMap editors = SimpleEditorMap.get(level);
+    final Model model = level.getDefaultFactory().createModel();
+    model.setXmlBase(readString(in));
+    for (int i = in.readInt(); i > 0; i--)
+      model.getNameSpacePrefixMap().put(readString(in), readString(in));
+
+    final BioPAXElement[] elements = new BioPAXElement[in.readInt()];
+    for (int i = 0; i < elements.length; i++) {
+      Class<? extends BioPAXElement> type = level.getInterfaceForName(in.readUTF());
+      elements[i] = model.addNew(type, readString(in));
+    }
+
+    final Boolean restrictions = AbstractPropertyEditor.checkRestrictions.get();
+    AbstractPropertyEditor.checkRestrictions.set(false); //as it was when read from the RDF/XML
+    try {
+      for (BioPAXElement e : elements) {
+        for (int p = in.readInt(); p > 0; p--) {
+          final String property = in.readUTF();
+          final PropertyEditor editor = editors.getEditorForProperty(property, e.getModelInterface());
+          if (editor == null)
+            throw new IOException("No property " + property + " of " + e.getModelInterface().getSimpleName());
+          for (int v = in.readInt(); v > 0; v--) {
+            if (editor instanceof ObjectPropertyEditor)
+              editor.setValueToBean(elements[in.readInt()], e);
+            else
+              editor.setValueToBean(readString(in), e); //parsed by the editor
+          }
+        }
+      }
+    } finally {
+      AbstractPropertyEditor.checkRestrictions.set(restrictions);
+    }
+    return model;
+  }
+
+  // writeUTF is limited to 64K bytes (long comments, sequences)
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0)
+      return null;
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // deletes the least recently used snapshots while there are too many bytes
+  private synchronized void evict() {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+    if (files == null)
+      return;
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    long total = 0L;
+    for (File f : files)
+      total += f.length();
+    for (int i = 0; i < files.length - 1 && total > maxBytes; i++) {
+      total -= files[i].length();
+      files[i].delete();
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+      sb.append(String.format("%02x", b));
+    return sb.toString();
+  }
+}
@@ -1,21 +1,21 @@
 package org.pathwaycommons.cypath2.internal;
 
-import cpath.client.query.CPathQuery;
 import cpath.client.util.CPathException;
-import org.biopax.paxtools.model.Model;
 import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
 import org.cytoscape.view.layout.CyLayoutAlgorithm;
 import org.cytoscape.view.model.CyNetworkView;
+import org.cytoscape.view.model.View;
 import org.cytoscape.view.vizmap.VisualStyle;
 import org.cytoscape.work.AbstractTask;
+import org.cytoscape.work.Task;
 import org.cytoscape.work.TaskMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.InputStream;
+import java.util.Set;
 
 /**
  * A Task that gets data from the cPath2 server and
@@ -27,17 +27,17 @@ class NetworkAndViewTask extends AbstractTask {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(NetworkAndViewTask.class);
 
-  private final CPathQuery<Model> cPathQuery;
+  private final CachedQuery cPathQuery;
   private final String networkName;
 
   /**
    * Constructor
    * (advanced, for all get and graph queries).
    *
-   * @param cPathQuery  query
+   * @param cPathQuery  query (and cache key)
    * @param networkName network name
    */
-  public NetworkAndViewTask(CPathQuery<Model> cPathQuery, String networkName) {
+  public NetworkAndViewTask(CachedQuery cPathQuery, String networkName) {
     this.cPathQuery = cPathQuery;
     this.networkName = networkName;
   }
@@ -46,86 +46,72 @@ class NetworkAndViewTask extends AbstractTask {
 
     taskMonitor.setTitle("Pathway Commons Query");
 
-    if (cancelled) return;
+    if (cancelled || cPathQuery == null) return;
+
+    taskMonitor.setStatusMessage("Preparing the BioPAX reader...");
+    if (App.queryCache != null)
+      LOGGER.debug("Query cache: " + App.queryCache);
+    LOGGER.debug("Executors: " + AppExecutors.gauges());
+    // the same result data make the same model: the snapshot key is the digest of the cached result,
+    // so it expires with the cache entry (without the query cache, the digest is never known in advance)
+    final String snapshotKey = (App.queryCache != null)
+      ? ModelSnapshots.contentKey(App.queryCache.digest(cPathQuery.key())) : null;
+    // the reader sends the query when it runs (after its options are set), and closes the response
+    final BioPaxReaderTask reader = new BioPaxReaderTask(() -> open(cPathQuery), null, snapshotKey);
+    //the first task (the BioPAX reader) creates a network; the second one registers it and adds the view:
+    insertTasksAfterCurrentTask(reader, createRegisterTask(reader, networkName));
+    taskMonitor.setProgress(1.0);
+  }
 
+  // the query result or null when there is none (tells the user)
+  private static InputStream open(CachedQuery query) {
     try {
-      taskMonitor.setProgress(0);
-      taskMonitor.setStatusMessage("Getting the network data from server...");
-
-      String data = null;
-      if (cPathQuery != null) {
-        try {
-          data = cPathQuery.stringResult(null); //default format is BioPAX
-        } catch (CPathException e) {
-          LOGGER.warn("cPath2 query failed", e);
-          SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-              JOptionPane.showMessageDialog(null, "No results");
-            }
-          });
-        }
-      }
-
-      if (data == null || data.isEmpty()) {
-        taskMonitor.setStatusMessage("No data returned from the server.");
-        return;
-      }
-
-      // done.
-      taskMonitor.setProgress(0.4);
-      if (cancelled) {
-        return;
-      }
-
-      File tmpFile;
-      //always BioPAX
-      tmpFile = File.createTempFile("tmp_cypath2", ".owl");
-      tmpFile.deleteOnExit();
-      FileWriter writer = new FileWriter(tmpFile);
-      writer.write(data);
-      writer.close();
-
-      taskMonitor.setProgress(0.5);
-      if (cancelled) return;
-
-      taskMonitor.setStatusMessage("Processing the BioPAX data...");
-      final BioPaxReaderTask reader = new BioPaxReaderTask(new FileInputStream(tmpFile), null);
-      //the first task (the BioPAX reader) creates a network; the second one registers it and adds the view:
-      insertTasksAfterCurrentTask(reader, new AbstractTask() {
+      return QueryStreams.open(query);
+    } catch (CPathException e) {
+      LOGGER.warn("cPath2 query failed", e);
+      SwingUtilities.invokeLater(new Runnable() {
         @Override
-        public void run(TaskMonitor taskMonitor) throws Exception {
-          taskMonitor.setTitle("PathwayCommons, after BioPAX read");
-          final CyNetwork cyNetwork = reader.getNetworks()[0];
-
-          //check / set the network name attr. (otherwise, it won't be shown in the panel - a bug?..)
-          String name = cyNetwork.getRow(cyNetwork).get(CyNetwork.NAME, String.class);
-          if (name == null || name.trim().length() == 0) {
-            name = networkName;
-            if (name == null)
-              name = "Network from PathwayCommons (name is missing)";
-            Attributes.set(cyNetwork, cyNetwork, CyNetwork.NAME, name, String.class);
-          }
-          App.cyServices.networkManager.addNetwork(cyNetwork);
-
-          taskMonitor.setStatusMessage("Registered the network");
-
-          // create and register the view
-          final CyNetworkView view = reader.buildCyNetworkView(cyNetwork);
-          applyStyleAndLayout(view);
-
-          taskMonitor.setStatusMessage("Created and registered the view");
+        public void run() {
+          JOptionPane.showMessageDialog(null, "No results");
         }
       });
-    } finally {
-      taskMonitor.setStatusMessage("Done");
-      taskMonitor.setProgress(1.0);
+      return null;
     }
   }
 
+  //the second task after the BioPAX reader: registers the new network and adds the view
+  static Task createRegisterTask(final BioPaxReaderTask reader, final String networkName) {
+    return new AbstractTask() {
+      @Override
+      public void run(TaskMonitor taskMonitor) throws Exception {
+        taskMonitor.setTitle("PathwayCommons, after BioPAX read");
+        if (reader.getNetworks().length == 0)
+          return; //no data
+        final CyNetwork cyNetwork = reader.getNetworks()[0];
+
+        //check / set the network name attr. (otherwise, it won't be shown in the panel - a bug?..)
+        String name = cyNetwork.getRow(cyNetwork).get(CyNetwork.NAME, String.class);
+        if (name == null || name.trim().length() == 0) {
+          name = networkName;
+          if (name == null)
+            name = "Network from PathwayCommons (name is missing)";
+          Attributes.set(cyNetwork, cyNetwork, CyNetwork.NAME, name, String.class);
+        }
+        App.cyServices.networkManager.addNetwork(cyNetwork);
+
+        taskMonitor.setStatusMessage("Registered the network");
 
-  //sets a custom style and layout for just created view
-  private void applyStyleAndLayout(final CyNetworkView view) {
+        // create and register the view
+        final CyNetworkView view = reader.buildCyNetworkView(cyNetwork);
+        applyStyleAndLayout(view, CyLayoutAlgorithm.ALL_NODE_VIEWS);
+
+        taskMonitor.setStatusMessage("Created and registered the view");
+      }
+    };
+  }
+
+  //sets a custom style and layout for just created view (or the given node views only; null - no layout)
+  static void applyStyleAndLayout(final CyNetworkView view, final Set<View<CyNode>> nodeViews) {
     // apply the PC style and layout to a BioPAX-origin view;
     final CyNetwork cyNetwork = view.getModel();
 
@@ -143,13 +129,15 @@ class NetworkAndViewTask extends AbstractTask {
       SwingUtilities.invokeLater(new Runnable() {
         public void run() {
           // do layout
-          CyLayoutAlgorithm layout = App.cyServices.layoutManager.getLayout("force-directed");
-          if (layout == null) {
-            layout = App.cyServices.layoutManager.getDefaultLayout();
-            LOGGER.warn("'force-directed' layout not found; will use the default one.");
+          if (nodeViews != null) {
+            CyLayoutAlgorithm layout = App.cyServices.layoutManager.getLayout("force-directed");
+            if (layout == null) {
+              layout = App.cyServices.layoutManager.getDefaultLayout();
+              LOGGER.warn("'force-directed' layout not found; will use the default one.");
+            }
+            App.cyServices.taskManager.execute(layout.createTaskIterator(view,
+              layout.getDefaultLayoutContext(), nodeViews, ""));
           }
-          App.cyServices.taskManager.execute(layout.createTaskIterator(view,
-            layout.getDefaultLayoutContext(), CyLayoutAlgorithm.ALL_NODE_VIEWS, ""));
 
           App.cyServices.mappingManager.setVisualStyle(vs, view);
           vs.apply(view);
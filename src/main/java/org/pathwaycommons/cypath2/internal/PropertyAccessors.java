@@ -0,0 +1,59 @@
+package org.pathwaycommons.cypath2.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Getter method handles of BioPAX properties by model interface and property name,
+ * resolved once (including the properties that a type does not have).
+ */
+final class PropertyAccessors {
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private static final ClassValue<Map<String, Optional<MethodHandle>>> ACCESSORS =
+    new ClassValue<Map<String, Optional<MethodHandle>>>() {
+      @Override
+      protected Map<String, Optional<MethodHandle>> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+
+  private PropertyAccessors() {
+  }
+
+  /**
+   * Gets the getter for the property, e.g., "feature" or "modification-type"
+   * (invoke it with {@code (Object) handle.invokeExact((Object) bpe)}).
+   *
+   * @param type     BioPAX model interface
+   * @param property property name
+   * @return the getter handle or null when there is no such property
+   */
+  static MethodHandle get(Class<?> type, String property) {
+    final Map<String, Optional<MethodHandle>> accessors = ACCESSORS.get(type);
+    Optional<MethodHandle> handle = accessors.get(property);
+    if (handle == null) {
+      handle = resolve(type, property);
+      accessors.put(property, handle);
+    }
+    return handle.orElse(null);
+  }
+
+  private static Optional<MethodHandle> resolve(Class<?> type, String property) {
+    final String methodName = "get" + property.substring(0, 1).toUpperCase()
+      + property.substring(1).replace('-', '_');
+    try {
+      Method method = type.getMethod(methodName);
+      return Optional.of(MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      // this is often OK, as we guess L2 or L3 properties...
+      return Optional.empty();
+    }
+  }
+}
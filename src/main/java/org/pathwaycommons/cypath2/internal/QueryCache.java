@@ -0,0 +1,261 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of cPath2 get/graph query results (BioPAX),
+ * keyed by the canonical query (see {@link CachedQuery}).
+ * Entries are gzipped files (and the SHA-256 digests of their content, see {@link #digest(String)});
+ * they expire after the TTL, and the least recently used ones are deleted when the total size exceeds the limit.
+ */
+final class QueryCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryCache.class);
+  private static final String SUFFIX = ".owl.gz";
+  private static final String DIGEST_SUFFIX = ".sha256";
+  private static final String TMP_SUFFIX = ".tmp";
+  // entries of another format (e.g., keyed differently) are deleted;
+  // the first version's keys were not canonical (Object.toString), and its entries never hit;
+  // the second one had no content digests
+  private static final String FORMAT = "cypath2-query-3";
+  private static final String FORMAT_FILE = "FORMAT";
+
+  private final File dir;
+  private final long maxBytes;
+  private final long ttlMillis;
+  // file name to size, the least recently used first
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates the cache (and directory) and indexes the existing entries.
+   *
+   * @param dir       cache directory
+   * @param maxBytes  total size limit
+   * @param ttlMillis entry time to live
+   */
+  QueryCache(File dir, long maxBytes, long ttlMillis) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+
+    if (!dir.isDirectory() && !dir.mkdirs())
+      LOGGER.warn("Cannot create the query cache directory " + dir);
+    final boolean outdated = !FORMAT.equals(readFormat());
+    File[] files = dir.listFiles();
+    if (files != null) {
+      // older first (the LRU order is not persisted; the last write time is close enough)
+      Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+      for (File f : files) {
+        final String name = f.getName();
+        if (name.endsWith(TMP_SUFFIX) || (outdated && (name.endsWith(SUFFIX) || name.endsWith(DIGEST_SUFFIX)))
+          || (name.endsWith(SUFFIX) && !digestFile(name).isFile())) {
+          f.delete(); //incomplete or outdated
+        } else if (name.endsWith(SUFFIX)) {
+          entries.put(name, f.length());
+          totalBytes += f.length();
+        }
+      }
+      for (File f : files) {
+        final String name = f.getName();
+        if (name.endsWith(DIGEST_SUFFIX)
+          && !entries.containsKey(name.substring(0, name.length() - DIGEST_SUFFIX.length()) + SUFFIX))
+          f.delete(); //the entry is gone
+      }
+    }
+    if (outdated)
+      writeFormat();
+    evict();
+    LOGGER.info("Query cache: " + this);
+  }
+
+  /**
+   * Opens the cached result.
+   *
+   * @param key canonical query
+   * @return the data or null when it's not in the cache or expired
+   */
+  InputStream get(String key) {
+    final String name = fileName(key);
+    final File file = new File(dir, name);
+    synchronized (this) {
+      if (entries.get(name) == null) {
+        misses.incrementAndGet();
+        return null;
+      }
+      if (System.currentTimeMillis() - file.lastModified() > ttlMillis) {
+        remove(name);
+        misses.incrementAndGet();
+        return null;
+      }
+    }
+    try {
+      InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+      hits.incrementAndGet();
+      LOGGER.debug("Query cache hit: " + key);
+      return in;
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read the cached result of " + key, e);
+      synchronized (this) {
+        remove(name);
+      }
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * @param key canonical query
+   * @return SHA-256 (hex) of the cached result, or null when it's not in the cache or expired
+   */
+  synchronized String digest(String key) {
+    final String name = fileName(key);
+    if (entries.get(name) == null
+      || System.currentTimeMillis() - new File(dir, name).lastModified() > ttlMillis)
+      return null;
+    try {
+      return new String(Files.readAllBytes(digestFile(name).toPath()), StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Adds the data, as it's being read, to the cache.
+   * The new entry is stored when the returned stream is closed
+   * (if all the data were read without errors).
+   *
+   * @param key  canonical query
+   * @param data query result
+   * @return stream to read the data from
+   */
+  InputStream put(String key, InputStream data) {
+    final String name = fileName(key);
+    final File tmp;
+    final MessageDigest md = sha256();
+    final OutputStream out;
+    try {
+      tmp = File.createTempFile("query", TMP_SUFFIX, dir);
+      out = new DigestOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))), md);
+    } catch (IOException e) {
+      LOGGER.warn("Cannot cache the result of " + key, e);
+      return data;
+    }
+    return QueryStreams.tee(data, out, complete -> {
+      if (complete)
+        commit(name, tmp, toHex(md.digest()));
+      else
+        tmp.delete();
+    });
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d hits, %d misses, %d entries, %d KB (max %d KB)",
+      hits.get(), misses.get(), entries.size(), totalBytes / 1024, maxBytes / 1024);
+  }
+
+  private synchronized void commit(String name, File tmp, String digest) {
+    final File file = new File(dir, name);
+    try {
+      Files.write(digestFile(name).toPath(), digest.getBytes(StandardCharsets.UTF_8));
+      try {
+        Files.move(tmp.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to store a query cache entry " + name, e);
+      tmp.delete();
+      remove(name); //the old one, if any, does not match the digest
+      return;
+    }
+    final Long old = entries.put(name, file.length());
+    totalBytes += file.length() - ((old == null) ? 0L : old);
+    evict();
+  }
+
+  // deletes the least recently used entries while the cache is too large
+  private void evict() {
+    final Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && it.hasNext()) {
+      final Map.Entry<String, Long> e = it.next();
+      it.remove();
+      totalBytes -= e.getValue();
+      new File(dir, e.getKey()).delete();
+      digestFile(e.getKey()).delete();
+    }
+  }
+
+  private void remove(String name) {
+    final Long size = entries.remove(name);
+    if (size != null)
+      totalBytes -= size;
+    new File(dir, name).delete();
+    digestFile(name).delete();
+  }
+
+  // SHA-256 of the entry's (uncompressed) content
+  private File digestFile(String name) {
+    return new File(dir, name.substring(0, name.length() - SUFFIX.length()) + DIGEST_SUFFIX);
+  }
+
+  private String readFormat() {
+    try {
+      return new String(Files.readAllBytes(new File(dir, FORMAT_FILE).toPath()), StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return null; //new or outdated cache
+    }
+  }
+
+  private void writeFormat() {
+    try {
+      Files.write(new File(dir, FORMAT_FILE).toPath(), FORMAT.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to write the query cache format " + dir, e);
+    }
+  }
+
+  private static String fileName(String key) {
+    return toHex(sha256().digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+      sb.append(String.format("%02x", b));
+    return sb.toString();
+  }
+}
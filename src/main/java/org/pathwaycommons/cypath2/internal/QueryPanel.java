@@ -193,20 +193,14 @@ final class QueryPanel extends JPanel {
       }
 
       if (graphType == null) {
-        final CPathGetQuery getQ = App.client
-          .createGetQuery().sources(srcs);
+        final CachedQuery getQ = CachedQuery.get(srcs);
         App.cyServices.taskManager.execute(new TaskIterator(
           new NetworkAndViewTask(getQ, null)
         ));
       } else {
-        final CPathGraphQuery graphQ = App.client
-          .createGraphQuery()
-          .kind(graphType)
-          .sources(srcs).targets(tgts)
-          .datasourceFilter(App.options.selectedDatasources())
-          .direction(direction)
-          //.limit(1) TODO set limit (optional; default is 1)
-          .organismFilter(App.options.selectedOrganisms());
+        //TODO set limit (optional; default is 1)
+        final CachedQuery graphQ = CachedQuery.graph(graphType, srcs, tgts, direction, null,
+          App.options.selectedDatasources(), App.options.selectedOrganisms());
         App.cyServices.taskManager.execute(new TaskIterator(
           new NetworkAndViewTask(graphQ, null)
         ));
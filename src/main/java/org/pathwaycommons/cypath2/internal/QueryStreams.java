@@ -0,0 +1,282 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.util.CPathException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens cPath2 query results as input streams for the BioPAX readers:
+ * the HTTP response is read as it arrives (and copied to the query cache),
+ * without writing it to temporary files or holding the whole result in memory.
+ */
+final class QueryStreams {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QueryStreams.class);
+  // cPath2 status: no results
+  private static final int NO_RESULTS = 460;
+  private static final int CONNECT_TIMEOUT_MS = 30000;
+  // max time without any data from the server (a stalled response fails instead of hanging the task)
+  private static final int READ_TIMEOUT_MS = 120000;
+  // how long an identical query waits for the one in progress to be cached before sending its own request
+  private static final long WAIT_FOR_CACHE_SECONDS = 60;
+
+  // queries being downloaded into the cache; complete when their streams are closed
+  private static final ConcurrentMap<String, CompletableFuture<Void>> DOWNLOADING = new ConcurrentHashMap<>();
+
+  private QueryStreams() {
+  }
+
+  /**
+   * Gets the query result (BioPAX) as a stream (close it when done);
+   * uses the query cache, if it's enabled, where an identical query being downloaded now
+   * is waited for (a while) and then read from the cache.
+   *
+   * @param query cPath2 get or graph query
+   * @return stream or null when there's no data
+   * @throws CPathException when the query fails
+   */
+  static InputStream open(CachedQuery query) throws CPathException {
+    final QueryCache cache = App.queryCache;
+    if (cache == null)
+      return download(query);
+
+    final String key = query.key();
+    InputStream cached = cache.get(key);
+    if (cached != null)
+      return cached;
+
+    final CompletableFuture<Void> mine = new CompletableFuture<>();
+    final CompletableFuture<Void> other = DOWNLOADING.putIfAbsent(key, mine);
+    if (other != null) {
+      LOGGER.debug("Waiting for the same query in progress: " + key);
+      try {
+        other.get(WAIT_FOR_CACHE_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException e) {
+        DOWNLOADING.remove(key, other); //failed or abandoned (e.g., its stream is not closed)
+      }
+      cached = cache.get(key);
+      return (cached != null) ? cached : download(query);
+    }
+
+    final Runnable done = () -> {
+      DOWNLOADING.remove(key, mine);
+      mine.complete(null);
+    };
+    final InputStream data;
+    try {
+      data = download(query);
+    } catch (CPathException | RuntimeException e) {
+      done.run();
+      throw e;
+    }
+    if (data == null) {
+      done.run();
+      return null;
+    }
+    return new FilterInputStream(cache.put(key, data)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close(); //stores the cache entry
+        } finally {
+          done.run();
+        }
+      }
+    };
+  }
+
+  // posts the query to the client's endpoint and returns the response body stream
+  // (or null when there are no results); the client itself is not used, for it reads whole responses
+  private static InputStream download(CachedQuery query) throws CPathException {
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) new URL(query.url()).openConnection();
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+      connection.setReadTimeout(READ_TIMEOUT_MS);
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+      connection.setRequestProperty("Accept-Encoding", "gzip");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(query.formData().getBytes(StandardCharsets.UTF_8));
+      }
+
+      final int status = connection.getResponseCode();
+      if (status == NO_RESULTS || status == HttpURLConnection.HTTP_NO_CONTENT) {
+        connection.disconnect();
+        return null;
+      }
+      if (status != HttpURLConnection.HTTP_OK) {
+        final String message = connection.getResponseMessage();
+        connection.disconnect();
+        throw new CPathException("Query " + query + " failed: HTTP " + status + " " + message);
+      }
+
+      InputStream in = connection.getInputStream();
+      if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+        in = new GZIPInputStream(in);
+      // no data?
+      final PushbackInputStream body = new PushbackInputStream(in, 1);
+      final int first = body.read();
+      if (first < 0) {
+        body.close();
+        return null;
+      }
+      body.unread(first);
+      final HttpURLConnection http = connection;
+      // closed before the end - drops the connection (instead of reading the rest)
+      return new EndAwareInputStream(body) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            if (!atEnd())
+              http.disconnect();
+          }
+        }
+      };
+    } catch (IOException e) {
+      if (connection != null)
+        connection.disconnect();
+      throw new CPathException("Query " + query + " failed: " + e);
+    }
+  }
+
+  /**
+   * Reads the rest of the data, if any (e.g., whitespace after the end of document),
+   * so that a query result stream is complete when it's closed (and gets cached).
+   * Call it only when the data were successfully read; a stream closed before the end
+   * aborts the download instead.
+   *
+   * @param in data stream (not closed)
+   */
+  static void drain(InputStream in) {
+    final byte[] buf = new byte[8192];
+    try {
+      while (in.read(buf) >= 0) {
+        // skip
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Cannot read the rest of the data: " + e); //e.g., the parser closed the stream
+    }
+  }
+
+  /**
+   * Copies all the bytes read from the stream to the output.
+   * When the stream is closed, the output is closed, and the callback gets
+   * whether the copy is complete (the stream was read to the end, see {@link #drain(InputStream)}).
+   *
+   * @param in      data stream
+   * @param copy    output, e.g., a cache file
+   * @param onClose called once, after the output is closed, with true when all the data were copied
+   * @return stream that writes what it reads to the output
+   */
+  static InputStream tee(InputStream in, OutputStream copy, Consumer<Boolean> onClose) {
+    return new EndAwareInputStream(in) {
+      private boolean closed;
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0)
+          copy.write(b);
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0)
+          copy.write(b, off, n);
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        // read (and copy) instead of skipping
+        long skipped = 0;
+        byte[] buf = new byte[8192];
+        while (skipped < n) {
+          int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+          if (r < 0)
+            break;
+          skipped += r;
+        }
+        return skipped;
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed)
+          return;
+        closed = true;
+        // the rest is not read here: a cancelled or failed import does not wait for the whole response
+        boolean complete = atEnd();
+        try {
+          super.close();
+        } finally {
+          try {
+            copy.close();
+          } catch (IOException e) {
+            complete = false;
+          }
+          onClose.accept(complete);
+        }
+      }
+    };
+  }
+
+  // knows whether the end of data was reached
+  static class EndAwareInputStream extends FilterInputStream {
+    private boolean end;
+
+    EndAwareInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b < 0)
+        end = true;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n < 0)
+        end = true;
+      return n;
+    }
+
+    final boolean atEnd() {
+      return end;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchResponse;
+import cpath.client.util.CPathException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Pages of a full-text search result; loaded pages are kept (a few dozens of the recently used),
+ * and the next page can be loaded in the background in advance.
+ * A top pathways search result is one page.
+ */
+final class SearchPages {
+
+  private static final int MAX_CACHED_PAGES = 32;
+
+  final String keyword;
+  // BioPAX type filter; empty - top pathways
+  final String type;
+  final Set<String> datasources;
+  final Set<String> organisms;
+
+  private final Map<Integer, CompletableFuture<SearchResponse>> pages =
+    new LinkedHashMap<Integer, CompletableFuture<SearchResponse>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<SearchResponse>> eldest) {
+        return size() > MAX_CACHED_PAGES;
+      }
+    };
+  private volatile int numPages = 1;
+  private boolean cancelled;
+
+  /**
+   * @param keyword     query string
+   * @param type        BioPAX type filter; empty or null - top pathways search
+   * @param datasources datasource filter values
+   * @param organisms   organism filter values
+   */
+  SearchPages(String keyword, String type, Set<String> datasources, Set<String> organisms) {
+    this.keyword = keyword;
+    this.type = (type != null) ? type : "";
+    this.datasources = (datasources != null) ? datasources : Collections.<String>emptySet();
+    this.organisms = (organisms != null) ? organisms : Collections.<String>emptySet();
+  }
+
+  /**
+   * Gets the page (from the server, unless it's been loaded already or is being loaded).
+   *
+   * @param pageNo page number (0-based)
+   * @return search response
+   * @throws CPathException when the request fails (e.g., there are no hits)
+   */
+  SearchResponse get(int pageNo) throws CPathException {
+    try {
+      return load(pageNo).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof CPathException)
+        throw (CPathException) e.getCause();
+      throw e;
+    }
+  }
+
+  /**
+   * Starts loading the page in the background, if there is such page and it's not loaded yet.
+   *
+   * @param pageNo page number (0-based)
+   */
+  void prefetch(int pageNo) {
+    if (pageNo >= 0 && pageNo < numPages)
+      load(pageNo);
+  }
+
+  /**
+   * Stops loading pages (when a newer search has replaced this result, or has started before
+   * this one was shown; do not cancel the shown result before that): those being loaded
+   * are cancelled (waiting {@link #get(int)} calls throw CancellationException; the requests
+   * already sent are not aborted, and their results are dropped) and no more pages are requested.
+   */
+  synchronized void cancel() {
+    cancelled = true;
+    for (CompletableFuture<SearchResponse> page : new ArrayList<CompletableFuture<SearchResponse>>(pages.values()))
+      page.cancel(false);
+    pages.clear();
+  }
+
+  /**
+   * @return number of pages (known after the first page is loaded)
+   */
+  int numPages() {
+    return numPages;
+  }
+
+  /**
+   * @param response search response
+   * @return page number (0-based)
+   */
+  static int pageNo(SearchResponse response) {
+    return (response.getPageNo() != null) ? response.getPageNo() : 0;
+  }
+
+  private synchronized CompletableFuture<SearchResponse> load(final int pageNo) {
+    CompletableFuture<SearchResponse> page = pages.get(pageNo);
+    if (page != null)
+      return page;
+    if (cancelled) {
+      page = new CompletableFuture<SearchResponse>();
+      page.cancel(false);
+      return page;
+    }
+
+    page = ((type.isEmpty())
+      ? CPathRequests.topPathwaysAsync(keyword, datasources, organisms)
+      : CPathRequests.searchAsync(keyword, type, datasources, organisms, pageNo))
+      .thenApply(response -> {
+        countPages(response);
+        return response;
+      });
+    pages.put(pageNo, page);
+    final CompletableFuture<SearchResponse> loading = page;
+    page.whenComplete((response, e) -> {
+      if (e != null)
+        forget(pageNo, loading); //to try again next time
+    });
+    return page;
+  }
+
+  private void countPages(SearchResponse response) {
+    if (!type.isEmpty() && response != null && response.getNumHits() != null
+      && response.getMaxHitsPerPage() != null && response.getMaxHitsPerPage() > 0) {
+      numPages = (int) ((response.getNumHits() + response.getMaxHitsPerPage() - 1) / response.getMaxHitsPerPage());
+    }
+  }
+
+  private synchronized void forget(int pageNo, CompletableFuture<SearchResponse> page) {
+    pages.remove(pageNo, page);
+  }
+}
@@ -47,7 +47,7 @@ public class TheNetworkSearchTaskFactory extends AbstractNetworkSearchTaskFactor
       for (String name : q.split("[,\\s]+"))
         srcs.add(name);
       return new TaskIterator(new NetworkAndViewTask(
-        App.client.createGraphQuery().kind(GraphType.PATHSBETWEEN).sources(srcs), q)
+        CachedQuery.graph(GraphType.PATHSBETWEEN, srcs, null, null, null, null, null), q)
       );
     }
   }
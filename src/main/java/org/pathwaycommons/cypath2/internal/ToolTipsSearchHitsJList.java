@@ -5,46 +5,85 @@ import cpath.client.query.SearchResponse;
 
 import javax.swing.*;
 import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.WeakHashMap;
 
 class ToolTipsSearchHitsJList extends JList
   implements Observer {
 
+  // whether a filter panel sets the hits shown when more hits are added (see HitsFilterPanel)
+  private volatile boolean filtered;
+  // tooltips of the hits shown (used on the EDT only)
+  private final Map<SearchHit, String> toolTips = new WeakHashMap<SearchHit, String>();
+
   public ToolTipsSearchHitsJList() {
-    super(new DefaultListModel());
+    super(new HitsListModel());
   }
 
   @Override
   public String getToolTipText(MouseEvent mouseEvent) {
     int index = locationToIndex(mouseEvent.getPoint());
     if (index >= 0 && getModel() != null) {
-      SearchHit record = (SearchHit) getModel().getElementAt(index);
-      StringBuilder html = new StringBuilder();
-      html.append("<html><table cellpadding=10><tr><td>");
-      html.append("<B>").append(record.getBiopaxClass());
-      if (!record.getDataSource().isEmpty())
-        html.append("&nbsp;").append(
-          record.getDataSource().toString());
-      if (!record.getOrganism().isEmpty())
-        html.append("&nbsp;").append(
-          record.getOrganism().toString());
-      html.append("</B>&nbsp;");
-      html.append("</td></tr></table></html>");
-      return html.toString();
+      return toolTips.computeIfAbsent((SearchHit) getModel().getElementAt(index),
+        ToolTipsSearchHitsJList::toolTip);
     } else {
       return null;
     }
   }
 
+  private static String toolTip(SearchHit record) {
+    StringBuilder html = new StringBuilder();
+    html.append("<html><table cellpadding=10><tr><td>");
+    html.append("<B>").append(record.getBiopaxClass());
+    if (!record.getDataSource().isEmpty())
+      html.append("&nbsp;").append(
+        record.getDataSource().toString());
+    if (!record.getOrganism().isEmpty())
+      html.append("&nbsp;").append(
+        record.getOrganism().toString());
+    html.append("</B>&nbsp;");
+    html.append("</td></tr></table></html>");
+    return html.toString();
+  }
+
   @Override
+  @SuppressWarnings("unchecked")
   public synchronized void update(Observable o, Object arg) {
+    HitsListModel lm = (HitsListModel) this.getModel();
+    if (arg instanceof List) { //next page hits (infinite scroll)
+      if (!filtered)
+        lm.addHits((List<SearchHit>) arg);
+      return; //else the filter panel shows them (if they pass)
+    }
     SearchResponse resp = (SearchResponse) arg;
-    DefaultListModel lm = (DefaultListModel) this.getModel();
-    lm.clear();
-    for (SearchHit searchHit : resp.getSearchHit())
-      lm.addElement(searchHit);
-    setSelectedIndex(0);
+    lm.setHits(resp.getSearchHit(), () -> setSelectedIndex(0));
+  }
+
+  /**
+   * @param filtered whether a filter panel (re)sets the hits shown when the next page hits are added
+   */
+  void setFiltered(boolean filtered) {
+    this.filtered = filtered;
+  }
+
+  /**
+   * Runs the action (e.g., to load the next page)
+   * every time the list is scrolled down to the end.
+   *
+   * @param scrollPane this list's scroll pane
+   * @param loadMore   action
+   */
+  void setInfiniteScroll(final JScrollPane scrollPane, final Runnable loadMore) {
+    scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+      if (e.getValueIsAdjusting() || getModel().getSize() == 0)
+        return;
+      BoundedRangeModel range = scrollPane.getVerticalScrollBar().getModel();
+      if (range.getValue() + range.getExtent() >= range.getMaximum())
+        loadMore.run();
+    });
   }
 
 
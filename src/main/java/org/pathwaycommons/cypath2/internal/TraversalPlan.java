@@ -0,0 +1,151 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.biopax.paxtools.controller.ObjectPropertyEditor;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.level3.Entity;
+import org.biopax.paxtools.model.level3.Stoichiometry;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BioPAX properties of a model interface that become node attributes
+ * (and the attribute names), resolved once per class and attribute path;
+ * single cardinality object properties continue with the value's class plan,
+ * e.g., "cellularLocation/term".
+ */
+final class TraversalPlan {
+
+  private static final ClassValue<TraversalPlan> PLANS = new ClassValue<TraversalPlan>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    protected TraversalPlan computeValue(Class<?> type) {
+      return new TraversalPlan((Class<? extends BioPAXElement>) type, null);
+    }
+  };
+
+  private final Step[] steps;
+
+  private TraversalPlan(Class<? extends BioPAXElement> type, String path) {
+    List<Step> list = new ArrayList<Step>();
+    for (PropertyEditor editor : SimpleEditorMap.L3.getEditorsOf(type)) {
+      if (accept(editor))
+        list.add(new Step(editor, path));
+    }
+    this.steps = list.toArray(new Step[0]);
+  }
+
+  /**
+   * Gets the plan for the BioPAX type.
+   *
+   * @param type model interface
+   * @return plan
+   */
+  static TraversalPlan of(Class<? extends BioPAXElement> type) {
+    return PLANS.get(type);
+  }
+
+  /*
+   * Skips entity-range properties (which map to edges rather than attributes!),
+   * and several utility classes ranges (for which we do not want generate attributes or do another way)
+   */
+  private static boolean accept(PropertyEditor editor) {
+    final String prop = editor.getProperty();
+    if (editor instanceof ObjectPropertyEditor) {
+      Class<?> c = editor.getRange();
+      return !(Entity.class.isAssignableFrom(c)
+        || Stoichiometry.class.isAssignableFrom(c)
+        || "nextStep".equals(prop));
+    }
+    return !"name".equals(prop);
+  }
+
+  /**
+   * Sets the attributes of the element (of this plan's type).
+   *
+   * @param element BioPAX element
+   * @param attrs   attributes to update
+   */
+  void apply(BioPAXElement element, AttributeRecord attrs) {
+    final Deque<BioPAXElement> path = new ArrayDeque<BioPAXElement>();
+    path.push(element);
+    apply(element, attrs, path);
+  }
+
+  // path - the element and those it's nested in (an object reached again via another path is applied again)
+  @SuppressWarnings("unchecked")
+  private void apply(BioPAXElement element, AttributeRecord attrs, Deque<BioPAXElement> path) {
+    for (Step step : steps) {
+      for (Object obj : step.editor.getValueFromBean(element)) {
+        if (obj == null || step.editor.isUnknown(obj))
+          continue;
+
+        final String value = obj.toString();
+        if (!isBrackets(value)) {
+          if (step.multiple) {
+            // consider existing attribute values
+            List<String> prevList = attrs.get(step.name, List.class);
+            if (prevList != null) {
+              if (!prevList.contains(value)) prevList.add(value);
+            } else { //create
+              List<String> vals = new ArrayList<String>();
+              vals.add(value);
+              attrs.set(step.name, vals);
+            }
+          } else {
+            attrs.set(step.name, value);
+          }
+        }
+
+        // this effectively prevents going into details for
+        // such objects as values of 'xref', 'memberEntityReference', etc. props.
+        if (step.nested) {
+          BioPAXElement bpe = (BioPAXElement) obj;
+          if (path.contains(bpe))
+            continue; //escaped a loop
+          path.push(bpe);
+          step.plan(bpe.getModelInterface()).apply(bpe, attrs, path);
+          path.pop();
+        }
+      }
+    }
+  }
+
+  // whether the string is empty or contains only square brackets (e.g., an empty set)
+  private static boolean isBrackets(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '[' && c != ']')
+        return false;
+    }
+    return true;
+  }
+
+  private static final class Step {
+    final PropertyEditor editor;
+    final String name;
+    final boolean multiple;
+    // traverse deeper only if it's a single cardinality object range property
+    final boolean nested;
+    final Map<Class<? extends BioPAXElement>, TraversalPlan> plans;
+
+    Step(PropertyEditor editor, String path) {
+      this.editor = editor;
+      this.name = ((path == null) ? editor.getProperty() : path + "/" + editor.getProperty()).intern();
+      this.multiple = editor.isMultipleCardinality();
+      this.nested = editor instanceof ObjectPropertyEditor && !multiple;
+      this.plans = (nested) ? new ConcurrentHashMap<Class<? extends BioPAXElement>, TraversalPlan>() : null;
+    }
+
+    TraversalPlan plan(Class<? extends BioPAXElement> type) {
+      TraversalPlan plan = plans.get(type);
+      if (plan == null) {
+        plan = new TraversalPlan(type, name);
+        plans.put(type, plan);
+      }
+      return plan;
+    }
+  }
+}
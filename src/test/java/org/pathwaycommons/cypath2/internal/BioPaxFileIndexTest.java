@@ -0,0 +1,113 @@
+package org.pathwaycommons.cypath2.internal;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.cytoscape.work.TaskMonitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BioPaxFileIndexTest {
+
+  private static final TaskMonitor MONITOR = new TaskMonitor() {
+    public void setTitle(String title) {
+    }
+
+    public void setProgress(double progress) {
+    }
+
+    public void setStatusMessage(String statusMessage) {
+    }
+
+    public void showMessage(Level level, String message) {
+    }
+  };
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private File source;
+  private File indexDir;
+
+  @Before
+  public void setUp() throws IOException {
+    source = tmp.newFile("subgraph.owl");
+    try (InputStream in = getClass().getResourceAsStream("/subgraph.owl")) {
+      Files.copy(in, source.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    indexDir = new File(tmp.getRoot(), "index");
+  }
+
+  @Test
+  public void lookup() throws IOException {
+    try (BioPaxFileIndex index = BioPaxFileIndex.open(source, indexDir, MONITOR)) {
+      assertNull(index.subgraph(Collections.singleton("http://test/unknown")));
+      // only top-level elements are indexed (not in comments or CDATA)
+      assertNull(index.subgraph(Collections.singleton("http://test/not_this")));
+      // "#reaction1" is resolved against the xml:base
+      assertEquals(1, index.subgraph(Collections.singleton("http://test/smallMoleculeReference1")).size);
+      assertNotNull(index.subgraph(Collections.singleton("http://test/reaction1")));
+      assertNotNull(index.subgraph(Collections.singleton("http://test/pathway1")));
+    }
+  }
+
+  @Test
+  public void subgraph() throws IOException {
+    try (BioPaxFileIndex index = BioPaxFileIndex.open(source, indexDir, MONITOR)) {
+      BioPaxFileIndex.Subgraph subgraph = index.subgraph(Collections.singleton("http://test/protein1"));
+      assertEquals(3, subgraph.size);
+      Model model = read(subgraph);
+      assertEquals(3, model.getObjects().size());
+      assertTrue(model.containsID("http://test/protein1"));
+      assertTrue(model.containsID("http://test/proteinReference1"));
+      assertTrue(model.containsID("http://test/human"));
+
+      subgraph = index.subgraph(Arrays.asList("http://test/protein1", "http://test/protein2", "http://test/unknown"));
+      assertEquals(5, subgraph.size);
+      assertEquals(5, read(subgraph).getObjects().size());
+
+      // everything but protein2 and its reference
+      subgraph = index.subgraph(Collections.singleton("http://test/pathway1"));
+      assertEquals(8, subgraph.size);
+      model = read(subgraph);
+      assertEquals(8, model.getObjects().size());
+      assertTrue(model.containsID("http://test/smallMoleculeReference1"));
+      assertFalse(model.containsID("http://test/protein2"));
+    }
+  }
+
+  @Test
+  public void reindexesModifiedFile() throws IOException {
+    BioPaxFileIndex.open(source, indexDir, MONITOR).close();
+    File indexFile = indexDir.listFiles()[0];
+    long indexed = indexFile.lastModified();
+    BioPaxFileIndex.open(source, indexDir, MONITOR).close();
+    assertEquals(1, indexDir.listFiles().length);
+    assertEquals(indexed, indexFile.lastModified());
+
+    String owl = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+    Files.write(source.toPath(), owl.replace("</rdf:RDF>",
+      "<bp:Protein rdf:about=\"http://test/protein3\"/>\n</rdf:RDF>").getBytes(StandardCharsets.UTF_8));
+    try (BioPaxFileIndex index = BioPaxFileIndex.open(source, indexDir, MONITOR)) {
+      assertEquals(1, index.subgraph(Collections.singleton("http://test/protein3")).size);
+    }
+  }
+
+  private static Model read(BioPaxFileIndex.Subgraph subgraph) throws IOException {
+    try (InputStream in = subgraph.open()) {
+      return new SimpleIOHandler().convertFromOWL(in);
+    }
+  }
+}
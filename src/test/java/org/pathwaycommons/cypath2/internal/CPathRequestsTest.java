@@ -0,0 +1,98 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.util.CPathException;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CPathRequestsTest {
+
+  private static final long TIMEOUT = 10;
+
+  @Test
+  public void submitCoalescesSameRequests() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<String> request = () -> {
+      calls.incrementAndGet();
+      release.await();
+      return "result";
+    };
+    CompletableFuture<String> first = CPathRequests.submit("test:submit", request);
+    CompletableFuture<String> second = CPathRequests.submit("test:submit", request);
+    CompletableFuture<String> other = CPathRequests.submit("test:submit-other", request);
+    release.countDown();
+
+    assertEquals("result", first.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals("result", second.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals("result", other.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(2, calls.get());
+
+    // not in flight anymore - sent again
+    assertEquals("result", CPathRequests.submit("test:submit", request).get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void callCoalescesSameRequests() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<Integer> request = () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      release.await();
+      return 42;
+    };
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = callers.submit(() -> CPathRequests.call("test:call", request));
+      assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+      Future<Integer> second = callers.submit(() -> CPathRequests.call("test:call", request));
+      Thread.sleep(100); //let the second caller join
+      release.countDown();
+
+      assertEquals(42, (int) first.get(TIMEOUT, TimeUnit.SECONDS));
+      assertEquals(42, (int) second.get(TIMEOUT, TimeUnit.SECONDS));
+      assertEquals(1, calls.get());
+    } finally {
+      callers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void sharesFailure() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    Callable<String> request = () -> {
+      calls.incrementAndGet();
+      release.await();
+      throw new CPathException("no hits");
+    };
+    CompletableFuture<String> first = CPathRequests.submit("test:failure", request);
+    CompletableFuture<String> second = CPathRequests.submit("test:failure", request);
+    release.countDown();
+
+    for (CompletableFuture<String> f : new CompletableFuture[]{first, second}) {
+      try {
+        f.get(TIMEOUT, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof CPathException);
+      }
+    }
+    assertEquals(1, calls.get());
+
+    try {
+      CPathRequests.call("test:failure", () -> {
+        throw new CPathException("no hits");
+      });
+      fail();
+    } catch (CPathException e) {
+      assertEquals("no hits", e.getMessage());
+    }
+  }
+}
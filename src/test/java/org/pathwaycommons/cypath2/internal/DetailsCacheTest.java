@@ -0,0 +1,115 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.CPathClient;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class DetailsCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUp() {
+    App.client = CPathClient.newInstance("http://localhost/pc2/");
+  }
+
+  @Test
+  public void key() {
+    assertEquals(DetailsCache.key("u", "Pathway", Arrays.asList("b", "a"), null),
+      DetailsCache.key("u", "Pathway", Arrays.asList("a", "b"), Collections.<String>emptySet()));
+    assertNotEquals(DetailsCache.key("u", "Pathway", null, null),
+      DetailsCache.key("u", "Protein", null, null));
+  }
+
+  @Test
+  public void notUsedUntilFingerprintIsKnown() {
+    DetailsCache cache = new DetailsCache(10, null);
+    cache.put("k", "html");
+    assertNull(cache.get("k"));
+    cache.setDatasourcesFingerprint("v1");
+    assertNull(cache.get("k"));
+    cache.put("k", "html");
+    assertEquals("html", cache.get("k"));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    DetailsCache cache = new DetailsCache(2, null);
+    cache.setDatasourcesFingerprint("v1");
+    cache.put("k1", "1");
+    cache.put("k2", "2");
+    cache.get("k1");
+    cache.put("k3", "3");
+    assertNull(cache.get("k2"));
+    assertEquals("1", cache.get("k1"));
+    assertEquals("3", cache.get("k3"));
+  }
+
+  @Test
+  public void saveAndLoad() {
+    File file = new File(tmp.getRoot(), "details.gz");
+    DetailsCache cache = new DetailsCache(10, file);
+    cache.setDatasourcesFingerprint("v1");
+    cache.put("k1", "1");
+    char[] big = new char[100000]; //over the writeUTF limit
+    Arrays.fill(big, '\u00e9');
+    cache.put("k2", new String(big));
+    cache.save();
+    assertTrue(file.isFile());
+
+    cache = new DetailsCache(10, file);
+    assertNull(cache.get("k1")); //until the datasources fingerprint is known
+    cache.setDatasourcesFingerprint("v1");
+    assertEquals("1", cache.get("k1"));
+    assertEquals(new String(big), cache.get("k2"));
+  }
+
+  @Test
+  public void dropsEntriesOfOtherDatasources() {
+    File file = new File(tmp.getRoot(), "details.gz");
+    DetailsCache cache = new DetailsCache(10, file);
+    cache.setDatasourcesFingerprint("v1");
+    cache.put("k", "1");
+    cache.save();
+
+    cache = new DetailsCache(10, file);
+    cache.setDatasourcesFingerprint("v2");
+    assertNull(cache.get("k"));
+    cache.put("k", "2");
+    cache.save();
+
+    cache = new DetailsCache(10, file);
+    cache.setDatasourcesFingerprint("v2");
+    assertEquals("2", cache.get("k"));
+    cache.setDatasourcesFingerprint("v3");
+    assertNull(cache.get("k"));
+  }
+
+  @Test
+  public void doesNotSaveUntilFingerprintIsKnown() {
+    File file = new File(tmp.getRoot(), "details.gz");
+    new DetailsCache(10, file).save();
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void deletesUnreadableFile() throws IOException {
+    File file = tmp.newFile("details.gz");
+    Files.write(file.toPath(), "not a cache".getBytes());
+    DetailsCache cache = new DetailsCache(10, file);
+    assertFalse(file.exists());
+    cache.setDatasourcesFingerprint("v1");
+    assertNull(cache.get("k"));
+  }
+}
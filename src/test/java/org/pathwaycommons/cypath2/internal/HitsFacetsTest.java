@@ -0,0 +1,98 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.query.SearchHit;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HitsFacetsTest {
+
+  private static final SearchHit PATHWAY = hit("p1", "Pathway", Arrays.asList("human"), Arrays.asList("reactome"));
+  private static final SearchHit PROTEIN = hit("p2", "Protein", Arrays.asList("mouse"), Arrays.asList("reactome", "kegg"));
+  private static final SearchHit COMPLEX = hit("p3", "Complex", null, Arrays.asList("kegg"));
+  private static final SearchHit UNTYPED = hit("p4", null, Arrays.asList("human"), Collections.<String>emptyList());
+
+  private final HitsFacets facets = new HitsFacets(Arrays.asList(PATHWAY, PROTEIN, COMPLEX, UNTYPED));
+
+  @Test
+  public void values() {
+    assertEquals(4, facets.size());
+    assertEquals(Arrays.asList("Pathway", "Protein", "Complex"), new ArrayList<>(facets.values(HitsFacets.Facet.TYPE)));
+    assertEquals(Arrays.asList("human", "mouse"), new ArrayList<>(facets.values(HitsFacets.Facet.ORGANISM)));
+    assertEquals(Arrays.asList("reactome", "kegg"), new ArrayList<>(facets.values(HitsFacets.Facet.DATASOURCE)));
+    assertEquals(4, facets.all().cardinality());
+  }
+
+  @Test
+  public void select() {
+    assertEquals(Arrays.asList(PATHWAY, COMPLEX),
+      facets.hits(facets.select(HitsFacets.Facet.TYPE, Arrays.asList("Pathway", "Complex", "Dna"))));
+    // hits without a type never pass the type filter
+    assertTrue(facets.select(HitsFacets.Facet.TYPE, Collections.<String>emptySet()).isEmpty());
+    // but those without organism or datasource values always pass such filters
+    assertEquals(Arrays.asList(PATHWAY, COMPLEX, UNTYPED),
+      facets.hits(facets.select(HitsFacets.Facet.ORGANISM, Collections.singleton("human"))));
+    assertEquals(Arrays.asList(PROTEIN, COMPLEX, UNTYPED),
+      facets.hits(facets.select(HitsFacets.Facet.DATASOURCE, Collections.singleton("kegg"))));
+
+    BitSet bits = facets.select(HitsFacets.Facet.DATASOURCE, Collections.singleton("reactome"));
+    bits.and(facets.select(HitsFacets.Facet.ORGANISM, Collections.singleton("mouse")));
+    assertEquals(Collections.singletonList(PROTEIN), facets.hits(bits));
+    // the index is not modified
+    assertEquals(Arrays.asList(PATHWAY, PROTEIN, UNTYPED),
+      facets.hits(facets.select(HitsFacets.Facet.DATASOURCE, Collections.singleton("reactome"))));
+  }
+
+  @Test
+  public void count() {
+    BitSet all = facets.all();
+    assertEquals(2, facets.count(HitsFacets.Facet.ORGANISM, "human", all));
+    assertEquals(2, facets.count(HitsFacets.Facet.DATASOURCE, "kegg", all));
+    assertEquals(0, facets.count(HitsFacets.Facet.DATASOURCE, "biogrid", all));
+
+    BitSet proteins = facets.select(HitsFacets.Facet.TYPE, Collections.singleton("Protein"));
+    assertEquals(1, facets.count(HitsFacets.Facet.DATASOURCE, "kegg", proteins));
+    assertEquals(0, facets.count(HitsFacets.Facet.ORGANISM, "human", proteins));
+    assertEquals(1, proteins.cardinality());
+  }
+
+  @Test
+  public void empty() {
+    HitsFacets none = new HitsFacets(Collections.<SearchHit>emptyList());
+    assertEquals(0, none.size());
+    assertTrue(none.all().isEmpty());
+    assertTrue(none.hits(none.select(HitsFacets.Facet.ORGANISM, Collections.singleton("human"))).isEmpty());
+  }
+
+  private static SearchHit hit(final String uri, final String type,
+                               final List<String> organisms, final List<String> datasources) {
+    return new SearchHit() {
+      @Override
+      public String getUri() {
+        return uri;
+      }
+
+      @Override
+      public String getBiopaxClass() {
+        return type;
+      }
+
+      @Override
+      public List<String> getOrganism() {
+        return organisms;
+      }
+
+      @Override
+      public List<String> getDataSource() {
+        return datasources;
+      }
+
+      @Override
+      public String toString() {
+        return uri;
+      }
+    };
+  }
+}
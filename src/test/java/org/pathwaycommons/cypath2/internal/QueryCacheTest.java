@@ -0,0 +1,177 @@
+package org.pathwaycommons.cypath2.internal;
+
+import cpath.client.CPathClient;
+import cpath.client.CPathClient.Direction;
+import cpath.client.query.GraphType;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+  private static final long DAY = 24 * 3600 * 1000L;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUp() {
+    App.client = CPathClient.newInstance("http://localhost/pc2/");
+  }
+
+  @Test
+  public void canonicalKey() {
+    assertEquals(CachedQuery.get(Arrays.asList("b", "a")).key(),
+      CachedQuery.get(Arrays.asList("a", "b", "a")).key());
+    assertEquals("http://localhost/pc2/get?uri=a,b", CachedQuery.get(Arrays.asList("b", "a")).key());
+    assertNotEquals(CachedQuery.get(Arrays.asList("a")).key(), CachedQuery.get(Arrays.asList("a", "b")).key());
+
+    CachedQuery q = CachedQuery.graph(GraphType.PATHSBETWEEN, Arrays.asList("y", "x"), null,
+      null, 1, Arrays.asList("reactome"), null);
+    assertEquals(q.key(), CachedQuery.graph(GraphType.PATHSBETWEEN, Arrays.asList("x", "y"), null,
+      null, 1, Arrays.asList("reactome"), null).key());
+    assertEquals(q.key(), q.toString());
+    assertNotEquals(q.key(), CachedQuery.graph(GraphType.PATHSBETWEEN, Arrays.asList("x", "y"), null,
+      null, 2, Arrays.asList("reactome"), null).key());
+    assertNotEquals(q.key(), CachedQuery.graph(GraphType.NEIGHBORHOOD, Arrays.asList("x", "y"), null,
+      Direction.BOTHSTREAM, 1, Arrays.asList("reactome"), null).key());
+  }
+
+  @Test
+  public void putAndGet() throws IOException {
+    QueryCache cache = new QueryCache(tmp.newFolder(), 1 << 20, DAY);
+    assertNull(cache.get("q1"));
+
+    byte[] data = "<rdf:RDF/>".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(data, read(cache.put("q1", new ByteArrayInputStream(data))));
+    assertArrayEquals(data, read(cache.get("q1")));
+    assertNull(cache.get("q2"));
+    assertEquals(1, cache.hits());
+    assertEquals(2, cache.misses());
+  }
+
+  @Test
+  public void digest() throws Exception {
+    File dir = tmp.newFolder();
+    QueryCache cache = new QueryCache(dir, 1 << 20, DAY);
+    assertNull(cache.digest("q"));
+    byte[] data = bytes(1000, 1);
+    read(cache.put("q", new ByteArrayInputStream(data)));
+    StringBuilder sha256 = new StringBuilder();
+    for (byte b : MessageDigest.getInstance("SHA-256").digest(data))
+      sha256.append(String.format("%02x", b));
+    assertEquals(sha256.toString(), cache.digest("q"));
+    assertEquals(sha256.toString(), new QueryCache(dir, 1 << 20, DAY).digest("q"));
+
+    for (File f : dir.listFiles())
+      f.setLastModified(System.currentTimeMillis() - 2 * DAY);
+    assertNull(cache.digest("q"));
+  }
+
+  @Test
+  public void dropsEntryClosedBeforeTheEnd() throws IOException {
+    QueryCache cache = new QueryCache(tmp.newFolder(), 1 << 20, DAY);
+    InputStream in = cache.put("q", new ByteArrayInputStream(bytes(10000, 1)));
+    in.read(new byte[100]);
+    in.close();
+    assertNull(cache.get("q"));
+  }
+
+  @Test
+  public void storesDrainedEntry() throws IOException {
+    QueryCache cache = new QueryCache(tmp.newFolder(), 1 << 20, DAY);
+    byte[] data = bytes(10000, 1);
+    InputStream in = cache.put("q", new ByteArrayInputStream(data));
+    in.read(new byte[100]);
+    QueryStreams.drain(in);
+    in.close();
+    assertArrayEquals(data, read(cache.get("q")));
+  }
+
+  @Test
+  public void dropsIncompleteEntry() throws IOException {
+    QueryCache cache = new QueryCache(tmp.newFolder(), 1 << 20, DAY);
+    InputStream failing = new SequenceInputStream(new ByteArrayInputStream(bytes(1000, 1)), new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("connection reset");
+      }
+    });
+    try {
+      read(cache.put("q", failing));
+      fail();
+    } catch (IOException e) {
+      //expected
+    }
+    assertNull(cache.get("q"));
+  }
+
+  @Test
+  public void expires() throws IOException {
+    File dir = tmp.newFolder();
+    QueryCache cache = new QueryCache(dir, 1 << 20, DAY);
+    read(cache.put("q", new ByteArrayInputStream(bytes(100, 1))));
+    for (File f : dir.listFiles())
+      f.setLastModified(System.currentTimeMillis() - 2 * DAY);
+    assertNull(cache.get("q"));
+    assertEquals(1, dir.listFiles().length); //only FORMAT
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() throws IOException {
+    // random bytes do not compress: each entry is a bit over 1000 bytes
+    QueryCache cache = new QueryCache(tmp.newFolder(), 2500, DAY);
+    read(cache.put("q1", new ByteArrayInputStream(bytes(1000, 1))));
+    read(cache.put("q2", new ByteArrayInputStream(bytes(1000, 2))));
+    read(cache.get("q1"));
+    read(cache.put("q3", new ByteArrayInputStream(bytes(1000, 3))));
+
+    assertNull(cache.get("q2"));
+    assertArrayEquals(bytes(1000, 1), read(cache.get("q1")));
+    assertArrayEquals(bytes(1000, 3), read(cache.get("q3")));
+  }
+
+  @Test
+  public void reopens() throws IOException {
+    File dir = tmp.newFolder();
+    read(new QueryCache(dir, 1 << 20, DAY).put("q", new ByteArrayInputStream(bytes(100, 1))));
+    assertArrayEquals(bytes(100, 1), read(new QueryCache(dir, 1 << 20, DAY).get("q")));
+  }
+
+  @Test
+  public void dropsEntriesOfOtherFormat() throws IOException {
+    File dir = tmp.newFolder();
+    read(new QueryCache(dir, 1 << 20, DAY).put("q", new ByteArrayInputStream(bytes(100, 1))));
+    new File(dir, "FORMAT").delete();
+    assertNull(new QueryCache(dir, 1 << 20, DAY).get("q"));
+  }
+
+  private static byte[] bytes(int size, long seed) {
+    byte[] b = new byte[size];
+    new Random(seed).nextBytes(b);
+    return b;
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    assertNotNull(in);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = in.read(buf)) > 0)
+        out.write(buf, 0, n);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}